@@ -0,0 +1,4 @@
+# Found by the core reflectively, see VoucherHandlers
+-keep class com.ath.voucher.android.LooperVoucherHandler {
+    public static *** attain();
+}
@@ -0,0 +1,42 @@
+package com.ath.voucher.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.ath.voucher.threadhandlers.VoucherHandler;
+import com.ath.voucher.threadhandlers.VoucherHandlers;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers callbacks on a {@link Looper}'s thread.<br>
+ * Having this module on the classpath is enough, {@link VoucherHandlers#getMainHandler()} picks up the main Looper on its own.
+ */
+public class LooperVoucherHandler extends VoucherHandler {
+    private final Looper mLooper;
+
+    public LooperVoucherHandler( @NonNull Looper looper ) {
+        super( executor( new Handler( looper ) ) );
+        mLooper = looper;
+    }
+
+    /**
+     * Called reflectively by {@link VoucherHandlers}, keep the signature.
+     */
+    public static VoucherHandler attain() {
+        return new LooperVoucherHandler( Looper.getMainLooper() ).setName( "main" );
+    }
+
+    @Override public boolean isCurrentThread() {
+        return mLooper.getThread() == Thread.currentThread();
+    }
+
+    private static Executor executor( final Handler handler ) {
+        return new Executor() {
+            @Override public void execute( Runnable command ) {
+                handler.post( command );
+            }
+        };
+    }
+}
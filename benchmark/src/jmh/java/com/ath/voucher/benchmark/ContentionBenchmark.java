@@ -0,0 +1,85 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * A subscribe + notify round trip from several threads, either all on one key (contended)
+ * or each thread on its own key (disjoint).<br>
+ * With more than one shard, disjoint throughput should grow with the thread count.
+ */
+@State( Scope.Benchmark )
+public class ContentionBenchmark {
+    private static final String SHARED_KEY = "shared";
+
+    @Param( { "1", "16" } )
+    public int shards;
+
+    private VoucherManager<Object> mManager;
+    private final VoucherPayload<Object> mPayload = new VoucherPayload<Object>( (Object) "payload" );
+
+    @State( Scope.Thread )
+    public static class ThreadKey {
+        String key;
+
+        @Setup
+        public void setup( ThreadParams params ) {
+            key = "key-" + params.getThreadIndex();
+        }
+    }
+
+    @Setup
+    @SuppressWarnings( "unchecked" )
+    public void setup() {
+        mManager = VoucherManager.attain( -1, shards );
+    }
+
+    private void roundTrip( String key ) {
+        mManager.newVoucher( key ).subscribe( ManagerBenchmark.Listeners.<Object>noop() );
+        mManager.notifyVouchers( key, mPayload );
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void disjoint1( ThreadKey t ) {
+        roundTrip( t.key );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public void disjoint4( ThreadKey t ) {
+        roundTrip( t.key );
+    }
+
+    @Benchmark
+    @Threads( Threads.MAX )
+    public void disjointMax( ThreadKey t ) {
+        roundTrip( t.key );
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public void contended1() {
+        roundTrip( SHARED_KEY );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public void contended4() {
+        roundTrip( SHARED_KEY );
+    }
+
+    @Benchmark
+    @Threads( Threads.MAX )
+    public void contendedMax() {
+        roundTrip( SHARED_KEY );
+    }
+}
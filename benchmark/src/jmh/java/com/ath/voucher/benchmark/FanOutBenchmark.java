@@ -0,0 +1,70 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N one-shot subscribers of the same key, the popular topic case.<br>
+ * Registration checks and removals should be O(1), so both benchmarks should grow linearly with N:
+ * divide the score by N and it should stay flat.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class FanOutBenchmark {
+    private static final String KEY = "popular";
+
+    @Param( { "1000", "5000", "20000" } )
+    public int subscribers;
+
+    private VoucherManager<Object> mManager;
+    private final List<Voucher<Object>> mVouchers = new ArrayList<>();
+    private final VoucherPayload<Object> mPayload = new VoucherPayload<Object>( (Object) "payload" );
+
+    @Setup( Level.Trial )
+    @SuppressWarnings( "unchecked" )
+    public void setupManager() {
+        mManager = VoucherManager.attain();
+    }
+
+    @Setup( Level.Invocation )
+    public void subscribe() {
+        mVouchers.clear();
+        for ( int i = 0; i < subscribers; i++ ) {
+            mVouchers.add( mManager.newVoucher( KEY ).subscribe( ManagerBenchmark.Listeners.<Object>noop() ) );
+        }
+    }
+
+    /**
+     * Every subscriber is checked and unregistered as it is notified.
+     */
+    @Benchmark
+    public void notifyVouchers() {
+        mManager.notifyVouchersClearCache( KEY, mPayload );
+    }
+
+    /**
+     * Subscribers leaving newest first, IE: screens unsubscribing as they are popped.
+     */
+    @Benchmark
+    public void unregisterNewestFirst() {
+        for ( int i = mVouchers.size() - 1; i >= 0; i-- ) {
+            mVouchers.get( i ).unregister();
+        }
+    }
+}
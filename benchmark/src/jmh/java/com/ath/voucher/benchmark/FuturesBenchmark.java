@@ -0,0 +1,55 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+import com.ath.voucher.jdk8.VoucherFutures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A voucher bridged to a CompletableFuture and joined, by hand versus {@link VoucherFutures}.<br>
+ * Both observe and deliver inline on the calling thread, the payload is cached so each op is observe, deliver and join.
+ */
+@State( Scope.Benchmark )
+public class FuturesBenchmark {
+    private static final String KEY = "topic";
+
+    private VoucherManager<Object> mManager;
+
+    @Setup
+    @SuppressWarnings( "unchecked" )
+    public void setup() {
+        mManager = VoucherManager.attain();
+        mManager.notifyVouchers( KEY, new VoucherPayload<Object>( (Object) "payload" ) );
+    }
+
+    /**
+     * What callers wrote before the bridge, a listener and a future per voucher.
+     */
+    @Benchmark
+    public Object handWrapped() {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        mManager.newVoucher( KEY ).observe( new VoucherResponse<Object>() {
+            @Override public void onResult( Voucher<Object> voucher, VoucherPayload<Object> payload ) {
+                if ( payload.getError() != null ) {
+                    future.completeExceptionally( payload.getError() );
+                } else {
+                    future.complete( payload.getData() );
+                }
+            }
+        } );
+        return future.join();
+    }
+
+    @Benchmark
+    public Object bridged() {
+        return VoucherFutures.toFuture( mManager.newVoucher( KEY ) ).join();
+    }
+}
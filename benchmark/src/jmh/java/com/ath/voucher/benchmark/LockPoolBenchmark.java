@@ -0,0 +1,61 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.NonReentrantLockPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * {@link NonReentrantLockPool} tryLock / unlock from several threads over overlapping keys.<br>
+ * Checks single flight as it goes: a second owner of a key fails the run with an IllegalStateException.
+ */
+@State( Scope.Benchmark )
+public class LockPoolBenchmark {
+
+    @Param( { "1", "16", "1024" } )
+    public int keys;
+
+    private NonReentrantLockPool mLocks;
+    private String[] mKeys;
+    private AtomicIntegerArray mOwners;
+
+    @State( Scope.Thread )
+    public static class Counter {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        mLocks = new NonReentrantLockPool();
+        mKeys = new String[keys];
+        for ( int i = 0; i < keys; i++ ) {
+            mKeys[i] = "key-" + i;
+        }
+        mOwners = new AtomicIntegerArray( keys );
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public boolean tryLockUnlock( Counter counter ) {
+        int index = ( counter.next++ & Integer.MAX_VALUE ) % keys;
+        String key = mKeys[index];
+        if ( !mLocks.tryLock( key ) ) {
+            return false;
+        }
+        try {
+            if ( mOwners.incrementAndGet( index ) != 1 ) {
+                throw new IllegalStateException( "two owners of " + key );
+            }
+            mOwners.decrementAndGet( index );
+        } finally {
+            mLocks.unlock( key );
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * newVoucher, subscribe and notifyVouchers on a key that already has N subscribers.<br>
+ * The subscribers resubscribe on every delivery so each notify fans out to all N.
+ */
+@State( Scope.Benchmark )
+public class ManagerBenchmark {
+    private static final String KEY = "topic";
+
+    @Param( { "1", "100", "10000" } )
+    public int subscribers;
+
+    private VoucherManager<Object> mManager;
+    private final VoucherPayload<Object> mPayload = new VoucherPayload<Object>( (Object) "payload" );
+
+    @Setup
+    @SuppressWarnings( "unchecked" )
+    public void setup() {
+        mManager = VoucherManager.attain();
+        for ( int i = 0; i < subscribers; i++ ) {
+            mManager.newVoucher( KEY ).subscribe( Listeners.RESUBSCRIBE );
+        }
+        mManager.notifyVouchers( KEY, mPayload ); // prime the cache so subscribe() delivers immediately
+    }
+
+    @Benchmark
+    public Voucher<Object> newVoucher() {
+        Voucher<Object> voucher = mManager.newVoucher( KEY );
+        voucher.unregister();
+        return voucher;
+    }
+
+    /**
+     * Key made by the manager's key generator.
+     */
+    @Benchmark
+    public Voucher<Object> newVoucherGeneratedKey() {
+        Voucher<Object> voucher = mManager.newVoucher();
+        voucher.unregister();
+        return voucher;
+    }
+
+    /**
+     * Delivered right away from the cached payload.
+     */
+    @Benchmark
+    public Voucher<Object> subscribe() {
+        return mManager.newVoucher( KEY ).subscribe( Listeners.<Object>noop() );
+    }
+
+    /**
+     * Already fulfilled, returns from the cached payload without parking.
+     */
+    @Benchmark
+    public VoucherPayload<Object> awaitCached() throws InterruptedException {
+        return mManager.newVoucher( KEY ).await( 1, TimeUnit.SECONDS );
+    }
+
+    @Benchmark
+    public void notifyVouchers() {
+        mManager.notifyVouchers( KEY, mPayload );
+    }
+
+    static final class Listeners {
+        static final VoucherResponse<Object> RESUBSCRIBE = new VoucherResponse<Object>() {
+            @Override public void onResult( Voucher<Object> voucher, VoucherPayload<Object> payload ) {
+                voucher.resubscribe();
+            }
+        };
+
+        private static final VoucherResponse<Object> NOOP = new VoucherResponse<Object>() {
+            @Override public void onResult( Voucher<Object> voucher, VoucherPayload<Object> payload ) {
+            }
+        };
+
+        @SuppressWarnings( "unchecked" )
+        static <DATA> VoucherResponse<DATA> noop() {
+            return (VoucherResponse<DATA>) (VoucherResponse<?>) NOOP;
+        }
+    }
+}
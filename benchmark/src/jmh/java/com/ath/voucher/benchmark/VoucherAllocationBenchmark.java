@@ -0,0 +1,71 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state Voucher operations that should not allocate.<br>
+ * Run with -PjmhProfilers=gc, gc.alloc.rate.norm should read ~0 B/op for all but {@link #resubscribeUnregister()},
+ * which queues a registration with the key every time.<br>
+ * Public API only, each op goes through the voucher's manager accessor.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class VoucherAllocationBenchmark {
+    private static final VoucherResponse<Object> NOOP = new VoucherResponse<Object>() {
+        @Override public void onResult( Voucher<Object> voucher, VoucherPayload<Object> payload ) {
+        }
+    };
+
+    private VoucherManager<Object> mManager;
+    private Voucher<Object> mRegistered;
+    private Voucher<Object> mIdle;
+
+    @Setup
+    @SuppressWarnings( "unchecked" )
+    public void setup() {
+        mManager = VoucherManager.attain();
+        mRegistered = mManager.newVoucher( "registered" );
+        mIdle = mManager.newVoucher( "idle" );
+        mIdle.unregister();
+    }
+
+    @Benchmark
+    public boolean isRegistered() {
+        return mRegistered.isRegistered();
+    }
+
+    /**
+     * Nothing cached yet, the voucher stays registered.
+     */
+    @Benchmark
+    public Voucher<Object> subscribe() {
+        return mRegistered.subscribe( NOOP );
+    }
+
+    @Benchmark
+    public Voucher<Object> unregister() {
+        mIdle.unregister();
+        return mIdle;
+    }
+
+    @Benchmark
+    public Voucher<Object> resubscribeUnregister() {
+        mIdle.resubscribe();
+        mIdle.unregister();
+        return mIdle;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Watcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Watchers started and canceled before they fire, the common case for {@link com.ath.voucher.Voucher#setTimeout(long)}.
+ */
+public class WatcherBenchmark {
+
+    private static Watcher startCancel() {
+        Watcher watcher = new Watcher( 1000 ) {
+            @Override protected void onTimeExceeded() {
+            }
+        }.start();
+        watcher.cancel();
+        return watcher;
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public Watcher startCancel1() {
+        return startCancel();
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public Watcher startCancel4() {
+        return startCancel();
+    }
+}
@@ -0,0 +1,77 @@
+package com.ath.voucher.benchmark;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherPayload;
+import com.ath.voucher.VoucherWorker;
+import com.ath.voucher.VoucherWorker.WorkerTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * enqueueVoucher round trips from several threads over a small (heavy dedup) or large (little dedup) key space.<br>
+ * Each request waits for its result, like a caller that needs the answer, so producers can't outrun the worker.<br>
+ * With a ttl each key runs once per ttl and the rest are served from memory.<br>
+ * A result that never lands is given up on after {@value #GIVE_UP_MILLIS}ms, so it shows up as slow results instead of a hang.
+ */
+@State( Scope.Benchmark )
+public class WorkerBenchmark {
+    private static final long GIVE_UP_MILLIS = 100;
+    private static final WorkerTask<Integer, Integer> ECHO = new WorkerTask<Integer, Integer>() {
+        @Override public Integer doInBackground( Integer input ) throws Exception {
+            return input;
+        }
+    };
+
+    @Param( { "1", "1024" } )
+    public int keys;
+
+    /**
+     * 0 runs every request through the executor, otherwise results are served from the worker's result cache.
+     */
+    @Param( { "0", "1000" } )
+    public long ttlMillis;
+
+    private VoucherWorker mWorker;
+    private String[] mKeys;
+
+    @State( Scope.Thread )
+    public static class Counter {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        mWorker = new VoucherWorker().setResultCache( ttlMillis, keys );
+        mKeys = new String[keys];
+        for ( int i = 0; i < keys; i++ ) {
+            mKeys[i] = "key-" + i;
+        }
+    }
+
+    @Benchmark
+    @Threads( 4 )
+    public VoucherPayload<Integer> enqueueVoucher( Counter counter ) throws InterruptedException {
+        int i = counter.next++;
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final VoucherPayload<?>[] result = new VoucherPayload<?>[1];
+        mWorker.enqueueVoucher( mKeys[( i & Integer.MAX_VALUE ) % keys], i, ECHO ).subscribe( new VoucherResponse<Integer>() {
+            @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                result[0] = payload;
+                done.countDown();
+            }
+        } );
+        done.await( GIVE_UP_MILLIS, TimeUnit.MILLISECONDS );
+        @SuppressWarnings( "unchecked" )
+        VoucherPayload<Integer> payload = (VoucherPayload<Integer>) result[0];
+        return payload;
+    }
+}
@@ -0,0 +1,140 @@
+package com.ath.voucher.jdk8;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.ath.voucher.NeverThrows;
+import com.ath.voucher.Voucher;
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+import com.ath.voucher.VoucherWorker;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * <pre>
+ * Two way bridge between vouchers and {@link CompletableFuture} / {@link CompletionStage}.
+ *
+ * Voucher to future:
+ * CompletableFuture&lt;User&gt; user = VoucherFutures.toFuture( manager.newVoucher( "alice" ) );
+ *
+ * Future to voucher key, everyone holding a voucher for "alice" is notified when the future completes:
+ * VoucherFutures.notifyOnComplete( fetchUser( "alice" ), manager, "alice" );
+ *
+ * Worker task as a future, ready for thenCombine, orTimeout (Java 9+) etc:
+ * CompletableFuture&lt;User&gt; user = VoucherFutures.enqueue( worker, "alice", "alice", loadUser );
+ *
+ * The future completes inline on whichever thread fulfills the voucher, no handler hop.
+ * Use the *Async variants of CompletableFuture when you need another thread.
+ * </pre>
+ */
+public final class VoucherFutures {
+
+    private VoucherFutures() {
+    }
+
+    /**
+     * Observes the voucher, see {@link Voucher#observe}, the returned future completes with its next data or error.<br>
+     * The voucher's own subscription is left alone, unregistering it fails the future with a VoucherCancelledException.<br>
+     * Cancelling the future stops observing, and unregisters the voucher when nobody is subscribed to it.
+     */
+    @NeverThrows
+    public static <DATA> CompletableFuture<DATA> toFuture( @NonNull Voucher<DATA> voucher ) {
+        VoucherFuture<DATA> future = new VoucherFuture<>( voucher );
+        voucher.observe( future );
+        return future;
+    }
+
+    /**
+     * @see #toFuture(Voucher)
+     */
+    @NeverThrows
+    public static <DATA> CompletionStage<DATA> toStage( @NonNull Voucher<DATA> voucher ) {
+        return toFuture( voucher );
+    }
+
+    /**
+     * Notify the manager's vouchers for key with the stage's result once it completes.<br>
+     * Exceptional completions are delivered as error payloads, unwrapped from {@link CompletionException}.
+     *
+     * @param clearCache see {@link VoucherManager#notifyVouchers(String, VoucherPayload, boolean)}
+     * @return the stage, for chaining
+     */
+    @NeverThrows
+    public static <DATA, STAGE extends CompletionStage<? extends DATA>> STAGE notifyOnComplete( @NonNull STAGE stage, @NonNull VoucherManager<DATA> manager, @NonNull String key, boolean clearCache ) {
+        stage.whenComplete( new KeyNotifier<DATA>( manager, key, clearCache ) );
+        return stage;
+    }
+
+    /**
+     * Same as {@link #notifyOnComplete(CompletionStage, VoucherManager, String, boolean)}, keeps the result cached.
+     */
+    @NeverThrows
+    public static <DATA, STAGE extends CompletionStage<? extends DATA>> STAGE notifyOnComplete( @NonNull STAGE stage, @NonNull VoucherManager<DATA> manager, @NonNull String key ) {
+        return notifyOnComplete( stage, manager, key, false );
+    }
+
+    /**
+     * {@link VoucherWorker#enqueueVoucher} as a future, concurrent requests for the same key still share one task.
+     */
+    @NeverThrows
+    public static <INPUT, RESULT> CompletableFuture<RESULT> enqueue( @NonNull VoucherWorker worker, @Nullable String key, INPUT input, @NonNull VoucherWorker.WorkerTask<INPUT, RESULT> task ) {
+        return toFuture( worker.enqueueVoucher( key, input, task ) );
+    }
+
+    /**
+     * The future is its own listener, one allocation per bridged voucher.
+     */
+    private static final class VoucherFuture<DATA> extends CompletableFuture<DATA> implements VoucherResponse<DATA> {
+        private final Voucher<DATA> mVoucher;
+
+        VoucherFuture( Voucher<DATA> voucher ) {
+            mVoucher = voucher;
+        }
+
+        @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            if ( payload.getError() != null ) {
+                completeExceptionally( payload.getError() );
+            } else {
+                complete( payload.getData() );
+            }
+        }
+
+        @Override public boolean cancel( boolean mayInterruptIfRunning ) {
+            boolean cancelled = super.cancel( mayInterruptIfRunning );
+            if ( cancelled && mVoucher.unobserve( this ) && !mVoucher.isSubscribed() ) {
+                mVoucher.unregister(); // only the future wanted it
+            }
+            return cancelled;
+        }
+    }
+
+    private static final class KeyNotifier<DATA> implements BiConsumer<DATA, Throwable> {
+        private final VoucherManager<DATA> mManager;
+        private final String mKey;
+        private final boolean mClearCache;
+
+        KeyNotifier( VoucherManager<DATA> manager, String key, boolean clearCache ) {
+            mManager = manager;
+            mKey = key;
+            mClearCache = clearCache;
+        }
+
+        @Override public void accept( DATA data, Throwable error ) {
+            if ( error == null ) {
+                mManager.notifyVouchers( mKey, new VoucherPayload<>( data ), mClearCache );
+                return;
+            }
+            if ( error instanceof CompletionException && error.getCause() != null ) {
+                error = error.getCause();
+            }
+            Exception e = error instanceof Exception ? (Exception) error : new ExecutionException( error );
+            mManager.notifyVouchers( mKey, new VoucherPayload<DATA>( e ), mClearCache );
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ath.voucher.jdk8;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+import com.ath.voucher.VoucherWorker;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VoucherFuturesTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<Integer> manager() {
+        return VoucherManager.attain();
+    }
+
+    @Test
+    public void futureCompletesWithTheData() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        CompletableFuture<Integer> future = VoucherFutures.toFuture( vm.newVoucher( "a" ) );
+        Assert.assertFalse( future.isDone() );
+        vm.notifyVouchers( "a", new VoucherPayload<>( 1 ) );
+        Assert.assertEquals( Integer.valueOf( 1 ), future.get( 1, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void futureCompletesExceptionallyWithTheError() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        CompletableFuture<Integer> future = VoucherFutures.toFuture( vm.newVoucher( "a" ) );
+        IllegalStateException error = new IllegalStateException( "boom" );
+        vm.notifyVouchers( "a", new VoucherPayload<Integer>( error ) );
+        try {
+            future.get( 1, TimeUnit.SECONDS );
+            Assert.fail( "expected the error" );
+        } catch ( ExecutionException e ) {
+            Assert.assertSame( error, e.getCause() );
+        }
+    }
+
+    @Test
+    public void stageCompletesLikeTheFuture() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        CompletionStage<Integer> stage = VoucherFutures.toStage( vm.newVoucher( "a" ) );
+        CompletableFuture<Integer> doubled = stage.thenApply( data -> data * 2 ).toCompletableFuture();
+        vm.notifyVouchers( "a", new VoucherPayload<>( 4 ) );
+        Assert.assertEquals( Integer.valueOf( 8 ), doubled.get( 1, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void subscriberStillGetsThePayload() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        AtomicReference<VoucherPayload<Integer>> seen = new AtomicReference<>();
+        voucher.subscribe( ( v, payload ) -> seen.set( payload ) );
+        CompletableFuture<Integer> future = VoucherFutures.toFuture( voucher );
+        vm.notifyVouchers( "a", new VoucherPayload<>( 3 ) );
+        Assert.assertEquals( Integer.valueOf( 3 ), future.get( 1, TimeUnit.SECONDS ) );
+        Assert.assertEquals( Integer.valueOf( 3 ), seen.get().getData() );
+    }
+
+    @Test
+    public void cancellingUnobservesAndUnregistersAnUnsubscribedVoucher() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        CompletableFuture<Integer> future = VoucherFutures.toFuture( voucher );
+        Assert.assertTrue( future.cancel( true ) );
+        Assert.assertFalse( voucher.isRegistered() );
+        Assert.assertTrue( future.isCancelled() );
+    }
+
+    @Test
+    public void cancellingLeavesASubscribedVoucherAlone() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        AtomicReference<VoucherPayload<Integer>> seen = new AtomicReference<>();
+        voucher.subscribe( ( v, payload ) -> seen.set( payload ) );
+        CompletableFuture<Integer> future = VoucherFutures.toFuture( voucher );
+        Assert.assertTrue( future.cancel( true ) );
+        Assert.assertTrue( voucher.isRegistered() );
+        vm.notifyVouchers( "a", new VoucherPayload<>( 5 ) );
+        Assert.assertEquals( Integer.valueOf( 5 ), seen.get().getData() );
+        Assert.assertTrue( future.isCancelled() );
+    }
+
+    @Test
+    public void notifyOnCompleteDeliversDataAndUnwrapsCompletionException() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        CompletableFuture<Integer> ok = VoucherFutures.toFuture( vm.newVoucher( "ok" ) );
+        VoucherFutures.notifyOnComplete( CompletableFuture.completedFuture( 7 ), vm, "ok" );
+        Assert.assertEquals( Integer.valueOf( 7 ), ok.get( 1, TimeUnit.SECONDS ) );
+
+        Voucher<Integer> failing = vm.newVoucher( "failing" );
+        AtomicReference<VoucherPayload<Integer>> seen = new AtomicReference<>();
+        failing.subscribe( ( v, payload ) -> seen.set( payload ) );
+        IllegalStateException error = new IllegalStateException( "boom" );
+        CompletableFuture<Integer> source = new CompletableFuture<>();
+        CompletableFuture<Integer> dependent = source.thenApply( data -> {
+            throw error; // surfaces wrapped in a CompletionException on the dependent stage
+        } );
+        VoucherFutures.notifyOnComplete( dependent, vm, "failing" );
+        source.complete( 1 );
+        Assert.assertSame( error, seen.get().getError() );
+    }
+
+    @Test
+    public void enqueueSharesOneTaskPerKey() throws Exception {
+        VoucherWorker worker = new VoucherWorker();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch( 1 );
+        VoucherWorker.WorkerTask<String, String> task = input -> {
+            runs.incrementAndGet();
+            release.await( 5, TimeUnit.SECONDS );
+            return input;
+        };
+        CompletableFuture<String> first = VoucherFutures.enqueue( worker, "k", "first", task );
+        CompletableFuture<String> second = VoucherFutures.enqueue( worker, "k", "second", task );
+        release.countDown();
+        Assert.assertEquals( "first", first.get( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals( "first", second.get( 5, TimeUnit.SECONDS ) ); // joined the run in flight
+        Assert.assertEquals( 1, runs.get() );
+    }
+}
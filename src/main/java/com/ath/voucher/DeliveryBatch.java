@@ -0,0 +1,72 @@
+package com.ath.voucher;
+
+import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.threadhandlers.VoucherHandler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects handler deliveries so they can be posted per {@link VoucherHandler} instead of per Voucher.<br>
+ * Deliveries are chunked so worker handlers still spread a large batch across threads.<br>
+ * Chunks are posted to each handler in the order their deliveries were added, so a handler that runs posts
+ * one at a time (main, event loop) sees them in order.  Worker handlers run chunks concurrently and promise no order.<br>
+ * Not thread safe, one batch per notifying thread.
+ */
+final class DeliveryBatch {
+    static final int MAX_PER_POST = 64;
+
+    private final Map<VoucherHandler, List<Delivery<?>>> mPending = new LinkedHashMap<>();
+
+    private static final class Delivery<DATA> {
+        private final Voucher<DATA> mVoucher;
+        private final VoucherPayload<DATA> mPayload;
+        private final VoucherResponse<DATA> mResponse;
+
+        Delivery( Voucher<DATA> voucher, VoucherPayload<DATA> payload, VoucherResponse<DATA> response ) {
+            mVoucher = voucher;
+            mPayload = payload;
+            mResponse = response;
+        }
+
+        void deliver() {
+            try {
+                mResponse.onResult( mVoucher, mPayload );
+            } catch ( Exception e ) {
+                Log.e( e );
+            }
+        }
+    }
+
+    <DATA> void add( VoucherHandler handler, Voucher<DATA> voucher, VoucherPayload<DATA> payload, VoucherResponse<DATA> response ) {
+        List<Delivery<?>> deliveries = mPending.get( handler );
+        if ( deliveries == null ) {
+            deliveries = new ArrayList<>();
+            mPending.put( handler, deliveries );
+        } else if ( deliveries.size() >= MAX_PER_POST ) {
+            post( handler, deliveries );
+            deliveries = new ArrayList<>();
+            mPending.put( handler, deliveries );
+        }
+        deliveries.add( new Delivery<>( voucher, payload, response ) );
+    }
+
+    void flush() {
+        for ( Map.Entry<VoucherHandler, List<Delivery<?>>> entry : mPending.entrySet() ) {
+            post( entry.getKey(), entry.getValue() );
+        }
+        mPending.clear();
+    }
+
+    private static void post( VoucherHandler handler, final List<Delivery<?>> deliveries ) {
+        handler.post( new Runnable() {
+            @Override public void run() {
+                for ( Delivery<?> delivery : deliveries ) {
+                    delivery.deliver();
+                }
+            }
+        } );
+    }
+}
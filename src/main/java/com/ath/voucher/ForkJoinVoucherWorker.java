@@ -0,0 +1,154 @@
+package com.ath.voucher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * A {@link VoucherWorker} on a work stealing {@link ForkJoinPool}, for tasks that decompose into subtasks.
+ *
+ * Inside a task, {@link #fork} children and {@link #join} them:
+ * - Forked children go straight onto the pool, they never wait in a lane behind their own parents.
+ * - Joining a child that hasn't started yet runs it right there on the joining thread.
+ * - Joining anything else (stolen, deduped onto another request, a plain voucher) is a managed block,
+ *   the pool adds a thread to keep its parallelism instead of losing one to the wait.
+ * So a task waiting on subtasks never ties up the pool, unlike awaiting on a plain {@link VoucherWorker}.
+ *
+ * WorkerTask&lt;Page, List&lt;Item&gt;&gt; loadPage = new WorkerTask&lt;&gt;() {
+ *     public List&lt;Item&gt; doInBackground( Page page ) throws Exception {
+ *         List&lt;Voucher&lt;Item&gt;&gt; items = new ArrayList&lt;&gt;();
+ *         for ( String id : page.ids ) {
+ *             items.add( worker.fork( id, id, loadItem ) );
+ *         }
+ *         List&lt;Item&gt; out = new ArrayList&lt;&gt;();
+ *         for ( Voucher&lt;Item&gt; item : items ) {
+ *             out.add( worker.join( item ).getData() );
+ *         }
+ *         return out;
+ *     }
+ * };
+ *
+ * Top level requests still go through lanes, capacity and overflow like any {@link VoucherWorker}.
+ * </pre>
+ */
+public class ForkJoinVoucherWorker extends VoucherWorker {
+    private final ConcurrentHashMap<String, ForkJoinTask<?>> mForks = new ConcurrentHashMap<>();
+
+    /**
+     * Threads the pool aims to keep busy, read once while constructing.
+     */
+    protected int initParallelism() {
+        return Math.max( 2, Runtime.getRuntime().availableProcessors() );
+    }
+
+    @Override protected Executor initExecutor() {
+        return new ForkJoinPool( initParallelism() );
+    }
+
+    @Override protected int initConcurrency() {
+        return initParallelism();
+    }
+
+    /**
+     * {@link #enqueueVoucher(String, Object, WorkerTask)} for subtasks.<br>
+     * From one of this worker's threads the task is forked onto the pool, otherwise it is queued as {@link Lane#INTERACTIVE}.
+     */
+    @NeverThrows
+    public final <INPUT, RESULT> Voucher<RESULT> fork( @Nullable String key, INPUT input, @NonNull WorkerTask<INPUT, RESULT> task ) {
+        return enqueueVoucher( key, input, task, false, Lane.INTERACTIVE, isPoolThread() );
+    }
+
+    /**
+     * Wait for the voucher's payload without taking a thread from the pool, see the class comment.<br>
+     * Observes the voucher like {@link Voucher#await}, its subscription is left alone.
+     */
+    public final <DATA> VoucherPayload<DATA> join( @NonNull Voucher<DATA> voucher ) throws InterruptedException {
+        return join( voucher, Long.MAX_VALUE, TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * A child still waiting to start is run to completion before the timeout is looked at.
+     *
+     * @return the payload, or a TimeoutException payload if the timeout passed first, like {@link Voucher#await}
+     */
+    public final <DATA> VoucherPayload<DATA> join( @NonNull Voucher<DATA> voucher, long timeout, @NonNull TimeUnit unit ) throws InterruptedException {
+        boolean poolThread = isPoolThread();
+        ForkJoinTask<?> forked = poolThread ? mForks.get( voucher.getKey() ) : null;
+        if ( forked != null ) {
+            forked.quietlyJoin(); // runs it here if nobody stole it yet, otherwise helps with other work meanwhile
+        }
+        VoucherBlocker<DATA> blocker = new VoucherBlocker<>( voucher, timeout, unit );
+        if ( poolThread ) {
+            ForkJoinPool.managedBlock( blocker );
+        } else {
+            blocker.block();
+        }
+        return blocker.mPayload;
+    }
+
+    @Override void dispatch( String voucherKey, Lane lane, Runnable task, boolean forked ) throws VoucherRejectedException {
+        if ( !forked ) {
+            super.dispatch( voucherKey, lane, task, false );
+            return;
+        }
+        ForkedTask fork = new ForkedTask( voucherKey, task );
+        mForks.put( voucherKey, fork );
+        fork.fork(); // onto this thread's own deque, where join() finds it or another thread steals it
+    }
+
+    private boolean isPoolThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread && ( (ForkJoinWorkerThread) thread ).getPool() == getExecutor();
+    }
+
+    private final class ForkedTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final String mKey;
+        private final Runnable mTask;
+
+        ForkedTask( String key, Runnable task ) {
+            mKey = key;
+            mTask = task;
+        }
+
+        @Override protected void compute() {
+            try {
+                mTask.run();
+            } finally {
+                mForks.remove( mKey, this );
+            }
+        }
+    }
+
+    private static final class VoucherBlocker<DATA> implements ForkJoinPool.ManagedBlocker {
+        private final Voucher<DATA> mVoucher;
+        private final long mTimeout;
+        private final TimeUnit mUnit;
+        private volatile VoucherPayload<DATA> mPayload;
+
+        VoucherBlocker( Voucher<DATA> voucher, long timeout, TimeUnit unit ) {
+            mVoucher = voucher;
+            mTimeout = timeout;
+            mUnit = unit;
+        }
+
+        @Override public boolean block() throws InterruptedException {
+            if ( mPayload == null ) {
+                mPayload = mVoucher.await( mTimeout, mUnit );
+            }
+            return true;
+        }
+
+        @Override public boolean isReleasable() {
+            return mPayload != null;
+        }
+    }
+}
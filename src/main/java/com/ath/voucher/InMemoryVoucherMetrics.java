@@ -0,0 +1,285 @@
+package com.ath.voucher;
+
+import com.ath.voucher.threadhandlers.VoucherHandler;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * Keeps counters and histograms in memory, for a scraper to read with {@link #scrape()} or the getters.
+ *
+ * VoucherMetrics.install( new InMemoryVoucherMetrics() );
+ * </pre>
+ */
+public class InMemoryVoucherMetrics extends VoucherMetrics {
+    private static final int RETIRED = -1;
+
+    private final ConcurrentHashMap<String, AtomicInteger> mOutstanding = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, VoucherHandler> mHandlers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> mHandlerDepths = new ConcurrentHashMap<>();
+    private final Histogram mFanOut = new Histogram();
+    private final Histogram mDeliveryNanos = new Histogram();
+    private final Histogram mWorkerWaitNanos = new Histogram();
+    private final Histogram mWorkerExecutionNanos = new Histogram();
+    private final Histogram[] mLaneWaitNanos = new Histogram[VoucherWorker.Lane.values().length];
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mCacheHits = new AtomicLong();
+    private final AtomicLong mCacheMisses = new AtomicLong();
+
+    public InMemoryVoucherMetrics() {
+        for ( int i = 0; i < mLaneWaitNanos.length; i++ ) {
+            mLaneWaitNanos[i] = new Histogram();
+        }
+    }
+
+    /**
+     * <pre>
+     * Lock free histogram with power of two buckets.
+     * Percentiles are approximate, reported as the upper bound of the bucket they fall in.
+     * </pre>
+     */
+    public static final class Histogram {
+        private final AtomicLongArray mBuckets = new AtomicLongArray( 64 );
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record( long value ) {
+            long v = Math.max( 0, value );
+            mBuckets.incrementAndGet( 64 - Long.numberOfLeadingZeros( v ) - ( v == 0 ? 0 : 1 ) );
+            mCount.incrementAndGet();
+            mSum.addAndGet( v );
+            long max;
+            while ( v > ( max = mMax.get() ) && !mMax.compareAndSet( max, v ) ) {
+                // lost a race with another record, try again
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getSum() {
+            return mSum.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        /**
+         * @param percentile 0 - 100
+         */
+        public long getPercentile( double percentile ) {
+            long count = getCount();
+            if ( count == 0 ) {
+                return 0;
+            }
+            long rank = (long) Math.ceil( count * Math.min( 100, Math.max( 0, percentile ) ) / 100d );
+            long seen = 0;
+            for ( int i = 0; i < 64; i++ ) {
+                seen += mBuckets.get( i );
+                if ( seen >= rank ) {
+                    return Math.min( getMax(), i == 63 ? Long.MAX_VALUE : ( 1L << ( i + 1 ) ) - 1 );
+                }
+            }
+            return getMax();
+        }
+
+        String describe() {
+            return String.format( "count=%d sum=%d max=%d p50=%d p99=%d", getCount(), getSum(), getMax(), getPercentile( 50 ), getPercentile( 99 ) );
+        }
+    }
+
+    @Override public void onVoucherRegistered( String key ) {
+        while ( true ) {
+            AtomicInteger count = mOutstanding.get( key );
+            if ( count == null ) {
+                AtomicInteger created = new AtomicInteger();
+                count = mOutstanding.putIfAbsent( key, created );
+                if ( count == null ) {
+                    count = created;
+                }
+            }
+            int current = count.get();
+            if ( current != RETIRED && count.compareAndSet( current, current + 1 ) ) {
+                return;
+            }
+            if ( current == RETIRED ) {
+                mOutstanding.remove( key, count ); // help the retiring thread along, then start over
+            }
+        }
+    }
+
+    @Override public void onVoucherUnregistered( String key ) {
+        AtomicInteger count = mOutstanding.get( key );
+        if ( count == null ) {
+            return;
+        }
+        while ( true ) {
+            int current = count.get();
+            if ( current <= 0 ) {
+                return;
+            }
+            if ( count.compareAndSet( current, current - 1 ) ) {
+                // drop keys that have nothing outstanding so generated keys don't pile up
+                if ( current == 1 && count.compareAndSet( 0, RETIRED ) ) {
+                    mOutstanding.remove( key, count );
+                }
+                return;
+            }
+        }
+    }
+
+    @Override public void onNotify( String key, int fanOut ) {
+        mFanOut.record( fanOut );
+    }
+
+    @Override public void onDelivered( String key, long nanos ) {
+        mDeliveryNanos.record( nanos );
+    }
+
+    @Override public void onHandlerQueued( VoucherHandler handler, int depth ) {
+        String name = handler.getName();
+        Histogram depths = mHandlerDepths.get( name );
+        if ( depths == null ) {
+            mHandlers.putIfAbsent( name, handler );
+            Histogram created = new Histogram();
+            depths = mHandlerDepths.putIfAbsent( name, created );
+            if ( depths == null ) {
+                depths = created;
+            }
+        }
+        depths.record( depth );
+    }
+
+    @Override public void onTimeoutFired() {
+        mTimeouts.incrementAndGet();
+    }
+
+    @Override public void onWorkerTask( String key, long queueWaitNanos, long executionNanos ) {
+        mWorkerWaitNanos.record( queueWaitNanos );
+        mWorkerExecutionNanos.record( executionNanos );
+    }
+
+    @Override public void onWorkerLaneWait( VoucherWorker.Lane lane, long queueWaitNanos ) {
+        mLaneWaitNanos[lane.ordinal()].record( queueWaitNanos );
+    }
+
+    @Override public void onPayloadCacheLookup( String key, boolean hit ) {
+        if ( hit ) {
+            mCacheHits.incrementAndGet();
+        } else {
+            mCacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return a copy of the keys that currently have registered vouchers, and how many
+     */
+    public Map<String, Integer> getOutstandingVouchers() {
+        Map<String, Integer> out = new TreeMap<>();
+        for ( Map.Entry<String, AtomicInteger> entry : mOutstanding.entrySet() ) {
+            int count = entry.getValue().get();
+            if ( count > 0 ) {
+                out.put( entry.getKey(), count );
+            }
+        }
+        return out;
+    }
+
+    public Histogram getFanOut() {
+        return mFanOut;
+    }
+
+    public Histogram getDeliveryNanos() {
+        return mDeliveryNanos;
+    }
+
+    public Histogram getWorkerQueueWaitNanos() {
+        return mWorkerWaitNanos;
+    }
+
+    public Histogram getWorkerExecutionNanos() {
+        return mWorkerExecutionNanos;
+    }
+
+    public Histogram getWorkerLaneWaitNanos( VoucherWorker.Lane lane ) {
+        return mLaneWaitNanos[lane.ordinal()];
+    }
+
+    /**
+     * @return queue depths seen when work was posted, by handler name
+     */
+    public Map<String, Histogram> getHandlerQueueDepths() {
+        return new TreeMap<>( mHandlerDepths );
+    }
+
+    public long getTimeoutsFired() {
+        return mTimeouts.get();
+    }
+
+    public long getPayloadCacheHits() {
+        return mCacheHits.get();
+    }
+
+    public long getPayloadCacheMisses() {
+        return mCacheMisses.get();
+    }
+
+    /**
+     * One metric per line, "name value" or "name count=.. sum=.. max=.. p50=.. p99=..".
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        line( out, "voucher_notify_fanout", mFanOut.describe() );
+        line( out, "voucher_delivery_nanos", mDeliveryNanos.describe() );
+        line( out, "voucher_worker_queue_wait_nanos", mWorkerWaitNanos.describe() );
+        line( out, "voucher_worker_execution_nanos", mWorkerExecutionNanos.describe() );
+        for ( VoucherWorker.Lane lane : VoucherWorker.Lane.values() ) {
+            line( out, "voucher_worker_lane_wait_nanos{lane=\"" + lane.name().toLowerCase( Locale.US ) + "\"}", mLaneWaitNanos[lane.ordinal()].describe() );
+        }
+        line( out, "voucher_timeouts_fired", String.valueOf( mTimeouts.get() ) );
+        line( out, "voucher_payload_cache_hits", String.valueOf( mCacheHits.get() ) );
+        line( out, "voucher_payload_cache_misses", String.valueOf( mCacheMisses.get() ) );
+        for ( Map.Entry<String, Histogram> entry : getHandlerQueueDepths().entrySet() ) {
+            String handler = label( entry.getKey() );
+            line( out, "voucher_handler_queue_depth{handler=\"" + handler + "\"}", entry.getValue().describe() );
+            line( out, "voucher_handler_queue_depth_current{handler=\"" + handler + "\"}", String.valueOf( mHandlers.get( entry.getKey() ).getQueueDepth() ) );
+        }
+        for ( Map.Entry<String, Integer> entry : getOutstandingVouchers().entrySet() ) {
+            line( out, "voucher_outstanding{key=\"" + label( entry.getKey() ) + "\"}", String.valueOf( entry.getValue() ) );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Keys and handler names are the caller's, escaped the way the exposition format wants label values.
+     */
+    private static String label( String value ) {
+        StringBuilder out = new StringBuilder( value.length() );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if ( c == '\\' ) {
+                out.append( "\\\\" );
+            } else if ( c == '"' ) {
+                out.append( "\\\"" );
+            } else if ( c == '\n' ) {
+                out.append( "\\n" );
+            } else {
+                out.append( c );
+            }
+        }
+        return out.toString();
+    }
+
+    private static void line( StringBuilder out, String name, String value ) {
+        out.append( name ).append( ' ' ).append( value ).append( '\n' );
+    }
+}
@@ -0,0 +1,154 @@
+package com.ath.voucher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <pre>
+ * The vouchers registered under one key, in registration order.
+ *
+ * register, unregister and isRegistered are O(1) regardless of how many vouchers share the key:
+ * - A voucher points at the {@link Registration} it was queued with, it is registered while it does.
+ * - Unregistering just clears that pointer, the queued registration is dead from then on.
+ * - Dead registrations are skipped by {@link #snapshot()} and swept out in bulk once they make up half the queue,
+ *   so each one costs O(1) amortized to remove.
+ * - Once the last voucher leaves, the registry retires for good and the owner drops it,
+ *   so one-off keys (generated keys, IE: every VoucherWorker request) don't pile up.
+ *   A retired registry refuses registrations, the owner starts a fresh one.
+ *
+ * Lock free, safe from any thread.
+ * </pre>
+ */
+final class KeyRegistry<DATA> {
+    private static final int MIN_SWEEP = 16;
+    private static final int RETIRED = -1;
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<Voucher, Registration> REGISTRATION =
+            AtomicReferenceFieldUpdater.newUpdater( Voucher.class, Registration.class, "mRegistration" );
+    // field updaters rather than Atomic* fields, one registry per key adds up
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater<KeyRegistry> LIVE = AtomicIntegerFieldUpdater.newUpdater( KeyRegistry.class, "mLive" );
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater<KeyRegistry> QUEUED = AtomicIntegerFieldUpdater.newUpdater( KeyRegistry.class, "mQueued" );
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater<KeyRegistry> DEAD = AtomicIntegerFieldUpdater.newUpdater( KeyRegistry.class, "mDead" );
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater<KeyRegistry> SWEEPING = AtomicIntegerFieldUpdater.newUpdater( KeyRegistry.class, "mSweeping" );
+
+    static final class Registration<DATA> {
+        private final Voucher<DATA> mVoucher;
+
+        Registration( Voucher<DATA> voucher ) {
+            mVoucher = voucher;
+        }
+
+        boolean isLive() {
+            return mVoucher.mRegistration == this;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Registration<DATA>> mQueue = new ConcurrentLinkedQueue<>();
+    private volatile int mLive; // RETIRED once it has emptied
+    private volatile int mQueued;
+    private volatile int mDead;
+    private volatile int mSweeping;
+
+    /**
+     * @return false if the voucher was already registered or this registry {@link #isRetired()}
+     */
+    boolean register( Voucher<DATA> voucher ) {
+        if ( !acquire() ) {
+            return false;
+        }
+        Registration<DATA> registration = new Registration<>( voucher );
+        if ( !REGISTRATION.compareAndSet( voucher, null, registration ) ) {
+            release();
+            return false;
+        }
+        QUEUED.incrementAndGet( this );
+        mQueue.add( registration );
+        return true;
+    }
+
+    /**
+     * @return false if the voucher was not registered
+     */
+    boolean unregister( Voucher<DATA> voucher ) {
+        Registration<?> registration = voucher.mRegistration;
+        if ( registration == null || !REGISTRATION.compareAndSet( voucher, registration, null ) ) {
+            return false;
+        }
+        int dead = DEAD.incrementAndGet( this );
+        if ( !release() && dead >= MIN_SWEEP && dead * 2 >= mQueued ) {
+            sweep();
+        }
+        return true;
+    }
+
+    boolean isRetired() {
+        return mLive == RETIRED;
+    }
+
+    private boolean acquire() {
+        while ( true ) {
+            int live = mLive;
+            if ( live == RETIRED ) {
+                return false;
+            }
+            if ( LIVE.compareAndSet( this, live, live + 1 ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if that was the last voucher and the registry is now retired
+     */
+    private boolean release() {
+        return LIVE.decrementAndGet( this ) == 0 && LIVE.compareAndSet( this, 0, RETIRED );
+    }
+
+    static boolean isRegistered( Voucher<?> voucher ) {
+        return voucher.mRegistration != null;
+    }
+
+    /**
+     * @return the registered vouchers, oldest registration first
+     */
+    List<Voucher<DATA>> snapshot() {
+        List<Voucher<DATA>> vouchers = new ArrayList<>( size() );
+        for ( Registration<DATA> registration : mQueue ) {
+            if ( registration.isLive() ) {
+                vouchers.add( registration.mVoucher );
+            }
+        }
+        return vouchers;
+    }
+
+    int size() {
+        return Math.max( 0, mLive );
+    }
+
+    private void sweep() {
+        if ( !SWEEPING.compareAndSet( this, 0, 1 ) ) {
+            return; // someone else is on it
+        }
+        try {
+            Iterator<Registration<DATA>> it = mQueue.iterator();
+            while ( it.hasNext() ) {
+                if ( !it.next().isLive() ) {
+                    it.remove();
+                    QUEUED.decrementAndGet( this );
+                    DEAD.decrementAndGet( this );
+                }
+            }
+        } finally {
+            mSweeping = 0;
+        }
+    }
+}
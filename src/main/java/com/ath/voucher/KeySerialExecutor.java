@@ -0,0 +1,80 @@
+package com.ath.voucher;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time per key, in submission order, on the threads of another {@link Executor}.<br>
+ * Different keys run concurrently, a slow task only holds up later tasks of its own key.<br>
+ * No thread is held and no queue is kept for a key with nothing to run.<br>
+ * If the executor refuses a task it runs on the submitting thread, the next task tries the executor again.
+ */
+final class KeySerialExecutor {
+    private final Executor mExecutor;
+    private final Map<String, ArrayDeque<Runnable>> mQueues = new HashMap<>(); // guarded by this, a key is present while one of its tasks runs
+
+    KeySerialExecutor( Executor executor ) {
+        mExecutor = executor;
+    }
+
+    void execute( String key, Runnable run ) {
+        synchronized ( this ) {
+            ArrayDeque<Runnable> queue = mQueues.get( key );
+            if ( queue != null ) {
+                queue.add( run ); // the key's running task hands it on when done
+                return;
+            }
+            mQueues.put( key, new ArrayDeque<Runnable>() );
+        }
+        submit( key, run );
+    }
+
+    private void submit( String key, Runnable run ) {
+        while ( run != null ) {
+            try {
+                mExecutor.execute( new Step( key, run ) );
+                return;
+            } catch ( Exception e ) {
+                // shut down or full, run it here rather than wedge the key behind a task that never starts
+                Log.e( e );
+                try {
+                    run.run();
+                } catch ( Exception e1 ) {
+                    Log.e( e1 );
+                }
+                run = poll( key );
+            }
+        }
+    }
+
+    private synchronized Runnable poll( String key ) {
+        ArrayDeque<Runnable> queue = mQueues.get( key );
+        Runnable next = queue.poll();
+        if ( next == null ) {
+            mQueues.remove( key );
+        }
+        return next;
+    }
+
+    private final class Step implements Runnable {
+        private final String mKey;
+        private final Runnable mRun;
+
+        Step( String key, Runnable run ) {
+            mKey = key;
+            mRun = run;
+        }
+
+        @Override public void run() {
+            try {
+                mRun.run();
+            } catch ( Exception e ) {
+                Log.e( e );
+            } finally {
+                submit( mKey, poll( mKey ) );
+            }
+        }
+    }
+}
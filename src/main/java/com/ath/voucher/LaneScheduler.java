@@ -0,0 +1,288 @@
+package com.ath.voucher;
+
+import com.ath.voucher.VoucherWorker.Lane;
+import com.ath.voucher.VoucherWorker.Overflow;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * Feeds a worker's executor from one queue per {@link Lane}, highest priority lane first.
+ *
+ * - At most concurrency tasks are handed to the executor at once, the rest wait here where priority still applies.
+ * - Each lane may only fill its share of concurrency, so a flood in one lane leaves room for the others.
+ * - A task that has waited longer than the aging window goes ahead of younger work in higher lanes,
+ *   oldest first, so low priority work is delayed but never starved.
+ * - Queued work across all lanes is bounded by capacity, beyond it the {@link Overflow} policy decides.
+ *
+ * Picking is O(lanes) under a lock, tasks always run outside of it.
+ * </pre>
+ */
+final class LaneScheduler {
+    static final long DEFAULT_AGING_MILLIS = 1000;
+    private static final int[] DEFAULT_SHARES = { 100, 100, 50 }; // percent of concurrency, by Lane ordinal
+
+    private final Executor mExecutor;
+    private final int mConcurrency;
+    private final Lane[] mLanes = Lane.values();
+    private final ArrayDeque<Task>[] mQueues;
+    private final int[] mRunning;
+    private final int[] mLimits;
+    private int mRunningTotal;
+    private int mQueuedTotal;
+    private int mCapacity = Integer.MAX_VALUE;
+    private Overflow mOverflow = Overflow.FAIL_FAST;
+    private int mCapacityWaiters;
+    private long mAgingNanos = TimeUnit.MILLISECONDS.toNanos( DEFAULT_AGING_MILLIS );
+
+    /**
+     * Implemented by work that must hear about being dropped, plain runnables are just not run.
+     */
+    interface Rejectable {
+        void onRejected( VoucherRejectedException e );
+    }
+
+    private final class Task implements Runnable {
+        private final Runnable mRun;
+        private final Lane mLane;
+        private final long mQueuedAtNanos;
+
+        Task( Runnable run, Lane lane, long queuedAtNanos ) {
+            mRun = run;
+            mLane = lane;
+            mQueuedAtNanos = queuedAtNanos;
+        }
+
+        @Override public void run() {
+            if ( VoucherMetrics.isEnabled() ) {
+                VoucherMetrics.get().onWorkerLaneWait( mLane, System.nanoTime() - mQueuedAtNanos );
+            }
+            try {
+                mRun.run();
+            } finally {
+                finished( mLane );
+            }
+        }
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    LaneScheduler( Executor executor, int concurrency ) {
+        mExecutor = executor;
+        mConcurrency = Math.max( 1, concurrency );
+        mQueues = new ArrayDeque[mLanes.length];
+        mRunning = new int[mLanes.length];
+        mLimits = new int[mLanes.length];
+        for ( int i = 0; i < mLanes.length; i++ ) {
+            mQueues[i] = new ArrayDeque<>();
+            mLimits[i] = limitFor( DEFAULT_SHARES[i] );
+        }
+    }
+
+    /**
+     * @throws VoucherRejectedException when full and the policy is {@link Overflow#FAIL_FAST},
+     *                                  or {@link Overflow#DROP_OLDEST} found nothing of the same or lower priority to drop
+     */
+    void execute( Lane lane, Runnable run ) throws VoucherRejectedException {
+        Task task = new Task( run, lane, System.nanoTime() );
+        Task dropped = null;
+        synchronized ( this ) {
+            if ( mQueuedTotal < mCapacity ) {
+                mQueues[lane.ordinal()].add( task );
+                mQueuedTotal++;
+            } else if ( mOverflow == Overflow.CALLER_RUNS ) {
+                task = null;
+            } else if ( mOverflow == Overflow.DROP_OLDEST && ( dropped = dropOldest( lane ) ) != null ) {
+                mQueues[lane.ordinal()].add( task );
+            } else {
+                throw new VoucherRejectedException( "Worker queue is full, " + mCapacity + " tasks waiting, " + lane + " rejected" );
+            }
+        }
+        if ( dropped != null ) {
+            reject( dropped, new VoucherRejectedException( "Worker queue is full, dropped the oldest " + dropped.mLane + " task for a newer one" ) );
+        }
+        if ( task == null ) {
+            run.run(); // CALLER_RUNS, the producer slows down by doing the work itself
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * Take run out of the lane before it starts.
+     *
+     * @return false if it was not waiting there
+     */
+    synchronized boolean remove( Lane lane, Runnable run ) {
+        Iterator<Task> it = mQueues[lane.ordinal()].iterator();
+        while ( it.hasNext() ) {
+            if ( it.next().mRun == run ) {
+                it.remove();
+                mQueuedTotal--;
+                notifyCapacity();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param percent of the worker's concurrency the lane may fill, at least one task always fits
+     */
+    synchronized void setShare( Lane lane, int percent ) {
+        mLimits[lane.ordinal()] = limitFor( percent );
+    }
+
+    synchronized void setAging( long millis ) {
+        mAgingNanos = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, millis ) );
+    }
+
+    synchronized void setCapacity( int capacity, Overflow overflow ) {
+        mCapacity = Math.max( 1, capacity );
+        mOverflow = overflow;
+        notifyCapacity();
+    }
+
+    synchronized int getCapacity() {
+        return mCapacity;
+    }
+
+    synchronized int getQueued( Lane lane ) {
+        return mQueues[lane.ordinal()].size();
+    }
+
+    synchronized int getQueued() {
+        return mQueuedTotal;
+    }
+
+    synchronized int getRunning() {
+        return mRunningTotal;
+    }
+
+    /**
+     * @return true once there is room for another task, false if the timeout passed first
+     */
+    synchronized boolean awaitCapacity( long timeout, TimeUnit unit ) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos( Math.max( 0, timeout ) );
+        mCapacityWaiters++;
+        try {
+            while ( mQueuedTotal >= mCapacity ) {
+                long remaining = deadline - System.nanoTime();
+                if ( remaining <= 0 ) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+            }
+            return true;
+        } finally {
+            mCapacityWaiters--;
+        }
+    }
+
+    /**
+     * Guarded by this.
+     */
+    private void notifyCapacity() {
+        if ( mCapacityWaiters > 0 ) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Guarded by this.
+     *
+     * @return the oldest task of the lowest priority lane that is not above lane, null if everything queued outranks it
+     */
+    private Task dropOldest( Lane lane ) {
+        for ( int i = mLanes.length - 1; i >= lane.ordinal(); i-- ) {
+            Task oldest = mQueues[i].poll();
+            if ( oldest != null ) {
+                return oldest;
+            }
+        }
+        return null;
+    }
+
+    private int limitFor( int percent ) {
+        return Math.max( 1, (int) ( (long) mConcurrency * Math.min( 100, Math.max( 0, percent ) ) / 100 ) );
+    }
+
+    private void finished( Lane lane ) {
+        synchronized ( this ) {
+            mRunning[lane.ordinal()]--;
+            mRunningTotal--;
+        }
+        pump();
+    }
+
+    private void pump() {
+        while ( true ) {
+            Task task;
+            synchronized ( this ) {
+                task = mRunningTotal < mConcurrency ? poll( System.nanoTime() ) : null;
+                if ( task == null ) {
+                    return;
+                }
+                mRunning[task.mLane.ordinal()]++;
+                mRunningTotal++;
+            }
+            try {
+                mExecutor.execute( task );
+            } catch ( Exception e ) {
+                boolean retry;
+                synchronized ( this ) {
+                    mRunning[task.mLane.ordinal()]--;
+                    mRunningTotal--;
+                    retry = mRunningTotal > 0; // the executor is busy, the next completion pumps again
+                    if ( retry ) {
+                        mQueues[task.mLane.ordinal()].addFirst( task );
+                        mQueuedTotal++;
+                    }
+                }
+                if ( retry ) {
+                    return;
+                }
+                // Nothing running that would come back for it, the executor is shut down or broken: fail it rather than strand it
+                reject( task, new VoucherRejectedException( "Worker executor rejected a " + task.mLane + " task", e ) );
+            }
+        }
+    }
+
+    private static void reject( Task task, VoucherRejectedException e ) {
+        if ( task.mRun instanceof Rejectable ) {
+            ( (Rejectable) task.mRun ).onRejected( e );
+        } else {
+            Log.e( e );
+        }
+    }
+
+    /**
+     * Guarded by this.
+     */
+    private Task poll( long nowNanos ) {
+        int best = -1;
+        int aged = -1;
+        for ( int i = 0; i < mLanes.length; i++ ) {
+            Task head = mQueues[i].peek();
+            if ( head == null || mRunning[i] >= mLimits[i] ) {
+                continue;
+            }
+            if ( best < 0 ) {
+                best = i;
+            }
+            if ( nowNanos - head.mQueuedAtNanos >= mAgingNanos
+                    && ( aged < 0 || head.mQueuedAtNanos - mQueues[aged].peek().mQueuedAtNanos < 0 ) ) {
+                aged = i;
+            }
+        }
+        int lane = aged >= 0 ? aged : best;
+        if ( lane < 0 ) {
+            return null;
+        }
+        mQueuedTotal--;
+        notifyCapacity();
+        return mQueues[lane].poll();
+    }
+}
@@ -0,0 +1,220 @@
+package com.ath.voucher;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Last payload per key, with an expiry and a size bound.
+ *
+ * - Each payload lives for its key's timeout, or the default timeout, counted from when it was put.
+ * - Beyond max entries a payload that has not been read lately is evicted (second chance, an approximate LRU).
+ * - Optionally an expired payload is still served for a stale window, marked {@link VoucherPayload#isStale()}.
+ * - Expired payloads are dropped when looked up, and a few of the oldest are checked on every put
+ *   so keys that are never looked up again don't linger.
+ *
+ * Reads take no lock, a hit only flags its entry as referenced.
+ * Writes are synchronized on the cache, intended to be owned by a single shard or a single worker.
+ * </pre>
+ */
+final class PayloadCache<DATA> {
+    static final long NO_TIMEOUT = -1;
+    private static final int SWEEP_PER_PUT = 4;
+
+    private static final class Entry<DATA> {
+        private final String mKey;
+        private final VoucherPayload<DATA> mPayload;
+        private final boolean mNeverExpires;
+        private final long mExpiresAtNanos; // meaningless when it never expires
+        private final long mDropAtNanos; // end of the stale window, same as expiry without one
+        private volatile VoucherPayload<DATA> mStalePayload; // made on first stale lookup, racing lookups make equal copies
+        private volatile boolean mReferenced; // read since the eviction hand last passed
+
+        Entry( String key, VoucherPayload<DATA> payload, boolean neverExpires, long expiresAtNanos, long dropAtNanos ) {
+            mKey = key;
+            mPayload = payload;
+            mNeverExpires = neverExpires;
+            mExpiresAtNanos = expiresAtNanos;
+            mDropAtNanos = dropAtNanos;
+        }
+
+        boolean isStale( long nowNanos ) {
+            return !mNeverExpires && nowNanos - mExpiresAtNanos >= 0;
+        }
+
+        boolean isExpired( long nowNanos ) {
+            return !mNeverExpires && nowNanos - mDropAtNanos >= 0;
+        }
+
+        VoucherPayload<DATA> stalePayload() {
+            VoucherPayload<DATA> stale = mStalePayload;
+            if ( stale == null ) {
+                mStalePayload = stale = mPayload.asStale();
+            }
+            return stale;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry<DATA>> mEntries = new ConcurrentHashMap<>(); // what readers see
+    private final LinkedHashMap<String, Entry<DATA>> mOrder = new LinkedHashMap<>(); // same entries, oldest put first, guarded by this
+    private final LinkedHashMap<String, Long> mTimeouts = new LinkedHashMap<>(); // guarded by this, bounded like the entries
+    private long mDefaultTimeoutMillis = NO_TIMEOUT;
+    private long mStaleMillis = 0;
+    private int mMaxEntries = Integer.MAX_VALUE;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+    private final AtomicLong mExpirations = new AtomicLong();
+
+    VoucherPayload<DATA> get( String key ) {
+        Entry<DATA> entry = mEntries.get( key );
+        if ( entry != null ) {
+            long now = System.nanoTime();
+            if ( entry.isExpired( now ) ) {
+                if ( drop( entry ) ) {
+                    mExpirations.incrementAndGet();
+                }
+                entry = null;
+            } else {
+                if ( !entry.mReferenced ) {
+                    entry.mReferenced = true; // no write once it's set, hot keys don't bounce the cache line
+                }
+                mHits.incrementAndGet();
+                VoucherMetrics.get().onPayloadCacheLookup( key, true );
+                return entry.isStale( now ) ? entry.stalePayload() : entry.mPayload;
+            }
+        }
+        mMisses.incrementAndGet();
+        VoucherMetrics.get().onPayloadCacheLookup( key, false );
+        return null;
+    }
+
+    synchronized void put( String key, VoucherPayload<DATA> payload ) {
+        long now = System.nanoTime();
+        long timeout = getTimeoutMillis( key );
+        boolean neverExpires = timeout == NO_TIMEOUT;
+        long expiresAt = neverExpires ? 0 : now + TimeUnit.MILLISECONDS.toNanos( timeout );
+        long dropAt = neverExpires ? 0 : expiresAt + TimeUnit.MILLISECONDS.toNanos( mStaleMillis );
+        Entry<DATA> entry = new Entry<>( key, payload, neverExpires, expiresAt, dropAt );
+        mOrder.remove( key ); // a new payload goes to the back of the line
+        mOrder.put( key, entry );
+        mEntries.put( key, entry );
+        sweep( now );
+        trim();
+    }
+
+    synchronized void remove( String key ) {
+        mOrder.remove( key );
+        mEntries.remove( key );
+    }
+
+    /**
+     * Also restarts the clock on the key's current payload, if any.<br>
+     * Per key timeouts are bounded by max entries too, beyond it the one set longest ago is forgotten.
+     */
+    synchronized void setTimeout( String key, long millis ) {
+        mTimeouts.remove( key );
+        if ( millis >= 0 ) {
+            mTimeouts.put( key, millis );
+            trimTimeouts();
+        }
+        Entry<DATA> entry = mEntries.get( key );
+        if ( entry != null && !entry.isStale( System.nanoTime() ) ) {
+            put( key, entry.mPayload );
+        }
+    }
+
+    synchronized void setDefaultTimeout( long millis ) {
+        mDefaultTimeoutMillis = millis < 0 ? NO_TIMEOUT : millis;
+    }
+
+    /**
+     * @param millis how long past its timeout a payload is still served as stale, 0 for none
+     */
+    synchronized void setStaleWindow( long millis ) {
+        mStaleMillis = Math.max( 0, millis );
+    }
+
+    synchronized void setMaxEntries( int maxEntries ) {
+        mMaxEntries = Math.max( 1, maxEntries );
+        trim();
+        trimTimeouts();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    long getEvictionCount() {
+        return mEvictions.get();
+    }
+
+    long getExpirationCount() {
+        return mExpirations.get();
+    }
+
+    /**
+     * @return false if the entry was already replaced or removed
+     */
+    private synchronized boolean drop( Entry<DATA> entry ) {
+        if ( !mEntries.remove( entry.mKey, entry ) ) {
+            return false;
+        }
+        mOrder.remove( entry.mKey );
+        return true;
+    }
+
+    private long getTimeoutMillis( String key ) {
+        Long timeout = mTimeouts.get( key );
+        return timeout != null ? timeout : mDefaultTimeoutMillis;
+    }
+
+    private void sweep( long nowNanos ) {
+        Iterator<Entry<DATA>> it = mOrder.values().iterator();
+        for ( int i = 0; i < SWEEP_PER_PUT && it.hasNext(); i++ ) {
+            Entry<DATA> entry = it.next();
+            if ( entry.isExpired( nowNanos ) ) {
+                it.remove();
+                mEntries.remove( entry.mKey, entry );
+                mExpirations.incrementAndGet();
+            }
+        }
+    }
+
+    private void trim() {
+        int chances = mOrder.size(); // a read racing the hand could otherwise keep it going around
+        while ( mOrder.size() > mMaxEntries ) {
+            Iterator<Entry<DATA>> it = mOrder.values().iterator();
+            Entry<DATA> oldest = it.next();
+            it.remove();
+            if ( oldest.mReferenced && chances-- > 0 ) {
+                oldest.mReferenced = false; // read lately, send it round again
+                mOrder.put( oldest.mKey, oldest );
+            } else {
+                mEntries.remove( oldest.mKey, oldest );
+                mEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void trimTimeouts() {
+        Iterator<Map.Entry<String, Long>> it = mTimeouts.entrySet().iterator();
+        while ( mTimeouts.size() > mMaxEntries && it.hasNext() ) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -4,16 +4,17 @@ import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.ath.voucher.WeakAccessor.DoWhenIsNull;
-import com.ath.voucher.WeakAccessor.DoWhenNotNull;
-import com.ath.voucher.WeakAccessor.GetWhenIsNull;
-import com.ath.voucher.WeakAccessor.GetWhenNotNull;
 import com.ath.voucher.threadhandlers.VoucherHandler;
 import com.ath.voucher.threadhandlers.VoucherHandlers;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -22,21 +23,55 @@ import java.util.concurrent.TimeoutException;
  * If you do not {@link #resubscribe()} you won't get called again.<br>
  * <br>
  * Think Future or Observable -- but simplified for the sake of easy to use.<br>
+ * <br>
+ * Delivery is lock free, a small state machine decides who delivers:<br>
+ * REGISTERED -> FIRING -> DELIVERED | DISABLED | DESTROYED<br>
+ * Only the CAS out of REGISTERED may deliver, so a notify racing a timeout (or another notify) delivers exactly once.<br>
+ * {@link #resubscribe()} puts the voucher back to REGISTERED, {@link #unregister()} takes it to UNREGISTERED.<br>
+ * No lock is held while subscriber code runs.<br>
+ * <br>
+ * There is one subscriber, see {@link #subscribe(VoucherResponse)}.
+ * Code built on top of a voucher (await, composition, futures) {@link #observe(VoucherResponse)}s it instead, so the subscriber is left alone.<br>
  */
 public class Voucher<DATA> {
-    private static final VoucherHandler MAIN_HANDLER = VoucherHandlers.getMainHandler();
+    static final int UNREGISTERED = 0;
+    static final int REGISTERED = 1; // waiting for a payload
+    static final int FIRING = 2; // a payload won the CAS and is being handed over
+    static final int DELIVERED = 3; // handed to the subscriber, or held for subscribe() if there was none yet
+    static final int DISABLED = 4; // payload parked until enable()
+    static final int DESTROYED = 5; // the parent is gone, terminal
+
+    private static final long NO_TIMEOUT = -1;
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicIntegerFieldUpdater<Voucher> STATE = AtomicIntegerFieldUpdater.newUpdater( Voucher.class, "mState" );
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<Voucher, VoucherPayload> PENDING =
+            AtomicReferenceFieldUpdater.newUpdater( Voucher.class, VoucherPayload.class, "mPending" );
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<Voucher, Observer[]> OBSERVERS =
+            AtomicReferenceFieldUpdater.newUpdater( Voucher.class, Observer[].class, "mObservers" );
+    private static final Observer[] NO_OBSERVERS = new Observer[0];
+
     private static final VoucherHandler WORKER_NEW_HANDLER = VoucherHandlers.getWorkerNewHandler();
     private static final VoucherHandler WORKER_RECYCLED_HANDLER = VoucherHandlers.getWorkerRecycledHandler();
+    private static final VoucherHandler WORKER_VIRTUAL_HANDLER = VoucherHandlers.getWorkerVirtualHandler();
     private final String mId;
-    private WeakAccessor<VoucherManager<DATA>> mManager;
-    private VoucherResponse<DATA> mListener;
+    private volatile WeakAccessor<VoucherManager<DATA>> mManager;
+    private volatile VoucherResponse<DATA> mListener;
     private Watcher mWatcher;
     private Object mWatcherLock = new Object();
-    private VoucherHandler mHandler;
-    private VoucherPayload<DATA> mErrPayload;
-    private Long mTimeoutMillis;
-    private boolean mEnabled = true;
-    private LinkedList<VoucherPayload<DATA>> mDisabledPayloads;
+    private volatile VoucherHandler mHandler;
+    private volatile VoucherPayload<DATA> mErrPayload;
+    private volatile long mTimeoutMillis = NO_TIMEOUT;
+    private volatile boolean mEnabled = true;
+    private LinkedList<VoucherPayload<DATA>> mDisabledPayloads; // guarded by this, never held across subscriber code
+    private volatile int mState = UNREGISTERED;
+    private volatile VoucherPayload<DATA> mPending; // delivered before anyone subscribed
+    private volatile Observer[] mObservers = NO_OBSERVERS; // copy on write, emptied by whoever settles the voucher
+    private volatile VoucherPayload<DATA> mSettled; // what observers get: the last payload, or why it was abandoned. Cleared when re-armed
+    volatile KeyRegistry.Registration<DATA> mRegistration; // owned by the manager's KeyRegistry, set while registered
 
     Voucher( VoucherManager<DATA> manager, String idKey ) {
         mManager = new WeakAccessor<>( manager );
@@ -44,6 +79,8 @@ public class Voucher<DATA> {
     }
 
     private void destroy() {
+        mState = DESTROYED;
+        mPending = null;
         mManager = null;
         mListener = null;
         mWatcher = null;
@@ -60,15 +97,19 @@ public class Voucher<DATA> {
      * Is this Voucher registered with the VoucherManager.
      */
     public boolean isRegistered() {
-        return WeakAccessor.get( mManager, new GetWhenNotNull<VoucherManager<DATA>, Boolean>() {
-            @Override public Boolean notNull( VoucherManager<DATA> m ) throws Exception {
-                return m.isRegistered( Voucher.this );
-            }
-        }, new GetWhenIsNull<Boolean>() {
-            @Override public Boolean isNull() throws Exception {
-                return false;
-            }
-        } );
+        VoucherManager<DATA> m = manager();
+        return m != null && m.isRegistered( this );
+    }
+
+    /**
+     * The manager, or null once it has been collected (or this voucher destroyed).<br>
+     * Deliberately not {@link WeakAccessor#get(WeakAccessor, WeakAccessor.GetWhenNotNull, WeakAccessor.GetWhenIsNull)},
+     * these paths are hot and that costs an anonymous class per call.
+     */
+    @Nullable
+    private VoucherManager<DATA> manager() {
+        WeakAccessor<VoucherManager<DATA>> ref = mManager;
+        return ref != null ? ref.get() : null;
     }
 
     /**
@@ -87,24 +128,170 @@ public class Voucher<DATA> {
      */
     public final Voucher<DATA> subscribe( @NonNull VoucherResponse<DATA> listener ) {
         this.mListener = listener;
-        WeakAccessor.exe( mManager, new DoWhenNotNull<VoucherManager<DATA>>() {
-            @Override public void notNull( VoucherManager<DATA> m ) throws Exception {
-                m.notifyVoucher( Voucher.this );
-            }
-        }, new DoWhenIsNull() {
-            @Override public void isNull() throws Exception {
-                Voucher.this.notifySubscriber( new VoucherPayload<DATA>( new Exception( "This Voucher's Manager has been destroyed" ) ) );
+        if ( drainPending( null, 0 ) ) {
+            return this; // fulfilled before we subscribed
+        }
+        VoucherManager<DATA> m = manager();
+        if ( m != null ) {
+            m.notifyVoucher( this );
+        } else {
+            notifySubscriber( new VoucherPayload<DATA>( new Exception( "This Voucher's Manager has been destroyed" ) ) );
+        }
+        return this;
+    }
+
+    /**
+     * An extra one shot listener that leaves the subscription alone, for code built on top of a voucher.<br>
+     * Called inline on whichever thread fulfills the voucher, regardless of the handler, so keep it quick.<br>
+     * Fires once with the voucher's next payload, or right away if it was fulfilled since it was last registered.
+     * A cached payload for the key is picked up just like {@link #subscribe(VoucherResponse)} would.<br>
+     * {@link #unregister()} before then fires it with a {@link VoucherCancelledException}.<br>
+     * Interim payloads, IE: a stale result while a refresh runs, are only for the subscriber.
+     */
+    @ThreadSafe
+    public final Voucher<DATA> observe( @NonNull VoucherResponse<DATA> observer ) {
+        Observer entry = new Observer( observer );
+        while ( true ) {
+            Observer[] current = mObservers;
+            Observer[] next = Arrays.copyOf( current, current.length + 1 );
+            next[current.length] = entry;
+            if ( OBSERVERS.compareAndSet( this, current, next ) ) {
+                break;
             }
-        } );
+        }
+        // Added first, checked second: whoever settles us either finds the entry or has already set mSettled for us to see
+        VoucherPayload<DATA> settled = mSettled;
+        if ( settled != null ) {
+            remove( entry );
+            entry.fire( this, settled );
+            return this;
+        }
+        VoucherManager<DATA> m = manager();
+        if ( m == null ) {
+            remove( entry );
+            entry.fire( this, new VoucherPayload<DATA>( new Exception( "This Voucher's Manager has been destroyed" ) ) );
+        } else if ( STATE.get( this ) == REGISTERED ) {
+            m.notifyVoucher( this );
+        }
         return this;
     }
 
+    /**
+     * @return false if the observer had already fired, or was never added
+     */
+    @ThreadSafe
+    public final boolean unobserve( @NonNull VoucherResponse<DATA> observer ) {
+        for ( Observer entry : mObservers ) {
+            if ( entry.mResponse == observer && remove( entry ) ) {
+                return entry.claim();
+            }
+        }
+        return false;
+    }
+
+    private boolean remove( Observer entry ) {
+        while ( true ) {
+            Observer[] current = mObservers;
+            int index = Arrays.asList( current ).indexOf( entry );
+            if ( index < 0 ) {
+                return false;
+            }
+            Observer[] next = new Observer[current.length - 1];
+            System.arraycopy( current, 0, next, 0, index );
+            System.arraycopy( current, index + 1, next, index, next.length - index );
+            if ( OBSERVERS.compareAndSet( this, current, next ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hand the payload to everyone observing, after which new observers get it straight away until we're re-armed.
+     */
+    private void settle( VoucherPayload<DATA> payload ) {
+        mSettled = payload;
+        if ( mObservers.length == 0 ) {
+            return;
+        }
+        for ( Observer entry : OBSERVERS.getAndSet( this, NO_OBSERVERS ) ) {
+            entry.fire( this, payload );
+        }
+    }
+
     final VoucherPayload<DATA> getPayload() {
-        return WeakAccessor.get( mManager, new GetWhenNotNull<VoucherManager<DATA>, VoucherPayload<DATA>>() {
-            @Override public VoucherPayload<DATA> notNull( VoucherManager<DATA> m ) throws Exception {
-                return m.getCachedPayload( mId );
+        VoucherPayload<DATA> pending = mPending;
+        if ( pending != null ) {
+            return pending;
+        }
+        VoucherManager<DATA> m = manager();
+        return m != null ? m.getCachedPayload( mId ) : null;
+    }
+
+    /**
+     * Block the calling thread until this voucher is fulfilled, at most timeout.<br>
+     * Observes the voucher, see {@link #observe(VoucherResponse)}, so a subscriber still gets the payload as usual.<br>
+     * Returns right away when it was fulfilled since it was last registered, or the key has a cached payload.<br>
+     * Only ever returns what fulfills the voucher: an interim stale payload from a refresh is left to the subscriber
+     * and await keeps waiting for the fresh one.<br>
+     * Giving up, on the deadline or an interrupt, only stops observing. The voucher stays registered and subscribed.<br>
+     * The deadline is the caller's own, no {@link Watcher} is involved, any {@link #setTimeout(long)} still applies.<br>
+     * Never call from the main thread.
+     *
+     * @return the payload, a {@link VoucherCancelledException} payload if unregistered meanwhile,
+     * or a {@link TimeoutException} payload if the deadline passed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public final VoucherPayload<DATA> await( long timeout, @NonNull TimeUnit unit ) throws InterruptedException {
+        VoucherPayload<DATA> payload = mSettled;
+        if ( payload != null ) {
+            return payload;
+        }
+        long deadline = System.nanoTime() + unit.toNanos( Math.max( 0, timeout ) );
+        ParkingResponse<DATA> waiter = new ParkingResponse<>( Thread.currentThread() );
+        observe( waiter ); // a cached payload is delivered right here
+        while ( ( payload = waiter.mPayload ) == null ) {
+            if ( Thread.interrupted() ) {
+                if ( unobserve( waiter ) ) {
+                    throw new InterruptedException();
+                }
+                Thread.currentThread().interrupt(); // the payload made it anyway, keep the interrupt for the caller
+                return waiter.handedOver();
+            }
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 ) {
+                if ( unobserve( waiter ) ) {
+                    return new VoucherPayload<DATA>( new TimeoutException( "Await exceeded " + unit.toMillis( timeout ) + "ms" ) );
+                }
+                return waiter.handedOver();
+            }
+            LockSupport.parkNanos( this, remaining );
+        }
+        return payload;
+    }
+
+    private static final class ParkingResponse<DATA> implements VoucherResponse<DATA> {
+        private final Thread mThread;
+        volatile VoucherPayload<DATA> mPayload;
+
+        ParkingResponse( Thread thread ) {
+            mThread = thread;
+        }
+
+        @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            mPayload = payload;
+            LockSupport.unpark( mThread );
+        }
+
+        /**
+         * For when the waiter lost the race to unobserve, the observer is already being fired and sets it in a moment.
+         */
+        VoucherPayload<DATA> handedOver() {
+            VoucherPayload<DATA> payload;
+            while ( ( payload = mPayload ) == null ) {
+                Thread.yield();
             }
-        }, null );
+            return payload;
+        }
     }
 
     public boolean isEnabled() {
@@ -120,40 +307,75 @@ public class Voucher<DATA> {
     public void enable() {
         if ( !isEnabled() ) {
             mEnabled = true;
-            if ( mDisabledPayloads != null ) {
-                WeakAccessor.exe( mManager, new DoWhenNotNull<VoucherManager<DATA>>() {
-                    @Override public void notNull( VoucherManager<DATA> m ) throws Exception {
-                        VoucherPayload<DATA> payload = mDisabledPayloads.peekLast();
-
-                        if ( mDisabledPayloads.size() > 1 ) {
-                            List<VoucherPayload<DATA>> payloads = VoucherPayload.filterErrors( mDisabledPayloads );
-                            mDisabledPayloads.clear();
-                            if ( payloads.size() > 0 ) {
-                                payload = payloads.get( payloads.size() - 1 );
-                            }
-                        }
-
-                        mDisabledPayloads.clear();
-
-                        if ( payload != null ) {
-                            m.notifyVoucher( Voucher.this, payload );
-                        }
-                    }
-                }, null );
+            VoucherPayload<DATA> payload = takeDisabledPayload();
+            VoucherManager<DATA> m = manager();
+            if ( payload != null && m != null ) {
+                m.notifyVoucher( this, payload );
+            }
+        }
+    }
+
+    /**
+     * @return the payload to deliver on enable, the last non-error payload if any otherwise the last error
+     */
+    private synchronized VoucherPayload<DATA> takeDisabledPayload() {
+        if ( mDisabledPayloads == null || mDisabledPayloads.isEmpty() ) {
+            return null;
+        }
+        VoucherPayload<DATA> payload = mDisabledPayloads.peekLast();
+        if ( mDisabledPayloads.size() > 1 ) {
+            List<VoucherPayload<DATA>> payloads = VoucherPayload.filterErrors( mDisabledPayloads );
+            if ( payloads.size() > 0 ) {
+                payload = payloads.get( payloads.size() - 1 );
             }
         }
+        mDisabledPayloads.clear();
+        return payload;
+    }
+
+    private synchronized void parkDisabledPayload( VoucherPayload<DATA> payload ) {
+        if ( mDisabledPayloads == null ) {
+            mDisabledPayloads = new LinkedList<>();
+        }
+        mDisabledPayloads.add( payload );
     }
 
     /**
      * Pull it out of the manager, unless you're holding onto the voucher, its gone.
      */
     public void unregister() {
+        boolean unfulfilled = STATE.compareAndSet( this, REGISTERED, UNREGISTERED );
+        leaveManager( true );
+        if ( unfulfilled ) {
+            settle( new VoucherPayload<DATA>( new VoucherCancelledException( "Unregistered before it was fulfilled " + mId ) ) );
+        }
+    }
+
+    /**
+     * Cancel the work behind this voucher.<br>
+     * Every voucher on the key, this one included, is fulfilled with a {@link VoucherCancelledException}.<br>
+     * For a {@link VoucherWorker} request the task is dropped from its queue, or interrupted if already running.
+     */
+    public void cancel() {
+        VoucherManager<DATA> m = manager();
+        if ( m != null ) {
+            m.cancel( mId );
+        } else {
+            unregister();
+        }
+    }
+
+    /**
+     * Out of the manager without touching the delivery state.
+     *
+     * @param abandoned given up on rather than fulfilled, see {@link VoucherManager#unregister(Voucher, boolean)}
+     */
+    private void leaveManager( boolean abandoned ) {
         cancelTimer();
-        WeakAccessor.exe( mManager, new DoWhenNotNull<VoucherManager<DATA>>() {
-            @Override public void notNull( VoucherManager<DATA> m ) throws Exception {
-                m.unregister( Voucher.this );
-            }
-        }, null );
+        VoucherManager<DATA> m = manager();
+        if ( m != null ) {
+            m.unregister( this, abandoned );
+        }
     }
 
     /**
@@ -164,43 +386,44 @@ public class Voucher<DATA> {
      * Consider {@link #linkParent(VoucherAware)}<br>
      */
     public void resubscribe() {
-        WeakAccessor.exe( mManager, new DoWhenNotNull<VoucherManager<DATA>>() {
-            @Override public void notNull( VoucherManager<DATA> m ) throws Exception {
-                m.register( Voucher.this.setTimeout( mTimeoutMillis ) );
-            }
-        }, null );
+        VoucherManager<DATA> m = manager();
+        if ( m != null ) {
+            m.register( setTimeout( mTimeoutMillis ) );
+        }
     }
 
     final int getTimeoutDefault() {
-        int timeout = WeakAccessor.get( mManager, new GetWhenNotNull<VoucherManager<DATA>, Integer>() {
-            @Override public Integer notNull( VoucherManager<DATA> m ) throws Exception {
-                return m.getDefaultVoucherTimeoutMillis();
-            }
-        }, new GetWhenIsNull<Integer>() {
-            @Override public Integer isNull() throws Exception {
-                return VoucherManager.DEFAULT_TIMEOUT;
-            }
-        } );
-        return timeout;
+        VoucherManager<DATA> m = manager();
+        return m != null ? m.getDefaultVoucherTimeoutMillis() : VoucherManager.DEFAULT_TIMEOUT;
     }
 
     public final Voucher<DATA> setTimeoutDefault() {
         return setTimeout( getTimeoutDefault() );
     }
 
+    /**
+     * @param millis null for no timeout
+     */
     public final Voucher<DATA> setTimeout( Integer millis ) {
-        Long longMillis = new Long( millis );
-        return setTimeout( longMillis );
+        return setTimeout( millis != null ? millis.longValue() : NO_TIMEOUT );
+    }
+
+    /**
+     * @param millis null for no timeout
+     */
+    @ThreadSafe
+    public final Voucher<DATA> setTimeout( Long millis ) {
+        return setTimeout( millis != null ? millis.longValue() : NO_TIMEOUT );
     }
 
     /**
      * Automatically canceled when when the voucher is notified from another source or unsubscribed
      *
-     * @param millis
+     * @param millis negative for no timeout
      * @return
      */
     @ThreadSafe
-    public final Voucher<DATA> setTimeout( Long millis ) {
+    public final Voucher<DATA> setTimeout( long millis ) {
         // FIXME: @aaronharris 3/12/17 what about when the app goes into the background, the timer stops but the thread probly doesnt? test?
         // Instead maybe implement a wrapper around Android Handler to simplify (see below)
         // then once you have that, you can pause and resume when the app goes away and comes back?
@@ -214,18 +437,19 @@ public class Voucher<DATA> {
         // if someone resubscribes, should resubscribe reset the timeout or should they have to do it themselves in the callback?
 
         // remember for resubscribe
-        mTimeoutMillis = millis;
+        mTimeoutMillis = millis < 0 ? NO_TIMEOUT : millis;
 
         // just in case we've called before
         cancelTimer();
 
         // do it
-        if ( mTimeoutMillis != null ) {
+        if ( mTimeoutMillis != NO_TIMEOUT ) {
+            final long timeoutMillis = mTimeoutMillis;
             synchronized ( mWatcherLock ) {
-                mWatcher = new Watcher( mTimeoutMillis ) {
+                mWatcher = new Watcher( timeoutMillis ) {
                     @Override
                     protected void onTimeExceeded() {
-                        Voucher.this.notifySubscriber( new VoucherPayload<DATA>( new TimeoutException( "Timeout Exceeded " + mTimeoutMillis + "ms" ) ) );
+                        Voucher.this.fulfil( new VoucherPayload<DATA>( new TimeoutException( "Timeout Exceeded " + timeoutMillis + "ms" ) ), null, 0, true );
                     }
                 }.start();
             }
@@ -269,14 +493,29 @@ public class Voucher<DATA> {
      * @return
      */
     public final Voucher<DATA> linkParent( final VoucherAware parent ) {
-        WeakAccessor.exe( mManager, new DoWhenNotNull<VoucherManager<DATA>>() {
-            @Override public void notNull( VoucherManager<DATA> m ) throws Exception {
-                m.linkParent( Voucher.this, parent );
-            }
-        }, null );
+        VoucherManager<DATA> m = manager();
+        if ( m != null ) {
+            m.linkParent( this, parent );
+        }
         return this;
     }
 
+    /**
+     * A voucher fulfilled with fn applied to this voucher's data, see {@link Vouchers} for how composition behaves.<br>
+     * Observes this voucher, its own subscription is left alone.
+     */
+    public final <OUT> Voucher<OUT> map( @NonNull Vouchers.Function<? super DATA, ? extends OUT> fn ) {
+        return Vouchers.map( this, fn );
+    }
+
+    /**
+     * A voucher fulfilled by the voucher fn returns for this voucher's data, see {@link Vouchers} for how composition behaves.<br>
+     * Observes this voucher, its own subscription is left alone.
+     */
+    public final <OUT> Voucher<OUT> flatMap( @NonNull Vouchers.Function<? super DATA, Voucher<OUT>> fn ) {
+        return Vouchers.flatMap( this, fn );
+    }
+
     /**
      * Indicate that you'd like to be called-back on AnyThread - no specific requirements.
      */
@@ -288,11 +527,12 @@ public class Voucher<DATA> {
      * Indicate that you'd like to be called-back on the MainThread.
      */
     public final Voucher<DATA> setHandlerMain() {
-        return setHandler( MAIN_HANDLER );
+        return setHandler( VoucherHandlers.getMainHandler() );
     }
 
     /**
-     * Indicate that you'd like to be called-back on a shiny new background thread - not the same one the blocking work was executed on.<br>
+     * Indicate that you'd like to be called-back on a background thread - not the same one the blocking work was executed on.<br>
+     * Threads come from a shared bounded pool, see {@link VoucherHandlers#getWorkerPool()}.<br>
      */
     public final Voucher<DATA> setHandlerWorker() {
         return setHandler( WORKER_NEW_HANDLER );
@@ -310,6 +550,14 @@ public class Voucher<DATA> {
         return setHandler( WORKER_RECYCLED_HANDLER );
     }
 
+    /**
+     * Indicate that you'd like to be called-back on a virtual thread of its own, ideal if your callback blocks.<br>
+     * Falls back to {@link #setHandlerWorker()} where virtual threads are unavailable.
+     */
+    public final Voucher<DATA> setHandlerWorkerVirtual() {
+        return setHandler( WORKER_VIRTUAL_HANDLER );
+    }
+
     /**
      * The handler bound to the thread you'd like to be called back on.<br>
      * Make sure that this thread is going to exist when this callback is returned!<br>
@@ -321,53 +569,186 @@ public class Voucher<DATA> {
         return this;
     }
 
-    final synchronized void notifySubscriber( VoucherPayload<DATA> payload ) {
-        if ( isRegistered() ) { // protect against synchronized pile-up
+    final void notifySubscriber( VoucherPayload<DATA> payload ) {
+        notifySubscriber( payload, null, 0 );
+    }
 
-            // The VoucherManager may process a Voucher that has not yet Voucher.subscribe() - this is by design.
-            // Because we want to honor the voucher regardless of use of the voucher (you may not want to Voucher.subscribe() but instead Voucher.getPayload() later)
-            // However while this concurrently safe, it is also concurrently confusing because we unsubscribe the voucher from the manager even though the Voucher may get a Voucher.subscribe() called later.
-            // We are protected because the Voucher.subscribe() checks for cached payloads and calls through to the subscription whether the Voucher is subscribed in the manager or not.
+    /**
+     * Deliver without giving up the registration, for a stale payload while a fresh one is on the way.<br>
+     * Never takes the state out of REGISTERED so the payload that follows can't be lost to it.<br>
+     * Dropped if the voucher is disabled, already fulfilled, or a payload is already waiting.
+     */
+    final void notifyInterim( VoucherPayload<DATA> payload ) {
+        if ( !isEnabled() || STATE.get( this ) != REGISTERED || !PENDING.compareAndSet( this, null, payload ) ) {
+            return;
+        }
+        if ( STATE.get( this ) != REGISTERED ) {
+            PENDING.compareAndSet( this, payload, null ); // fulfilled meanwhile, never hand the stale one over after it
+            return;
+        }
+        drainPending( null, 0 );
+    }
 
-            unregister();
-            if ( mListener != null ) {
-                try {
-                    VoucherPayload<DATA> myPayload = payload;
-                    if ( myPayload.getError() != null && mErrPayload != null ) {
-                        myPayload = mErrPayload;
-                    }
+    /**
+     * @param batch           optional - when given, handler deliveries are collected for the caller to post in bulk
+     * @param notifiedAtNanos when the payload was notified, for {@link VoucherMetrics#onDelivered}. 0 to not measure.
+     */
+    final void notifySubscriber( VoucherPayload<DATA> payload, @Nullable DeliveryBatch batch, long notifiedAtNanos ) {
+        fulfil( payload, batch, notifiedAtNanos, false );
+    }
 
-                    if ( isEnabled() ) {
-                        if ( mHandler != null ) {
-                            mHandler.sendMessage( this, myPayload, mListener );
-                        } else {
-                            mListener.onResult( this, myPayload );
-                        }
-                    } else {
-                        resubscribe();
-                        if ( mDisabledPayloads == null ) {
-                            mDisabledPayloads = new LinkedList<>();
-                        }
-                        mDisabledPayloads.add( myPayload );
-                    }
-                } catch ( Exception e ) {
-                    Log.e( e );
-                }
+    /**
+     * @param timedOut the payload is our own timeout, we leave the manager abandoned: if we were the key's last voucher
+     *                 nobody is waiting for the work behind it anymore, see {@link VoucherManager.KeyWatcher}
+     */
+    private void fulfil( VoucherPayload<DATA> payload, @Nullable DeliveryBatch batch, long notifiedAtNanos, boolean timedOut ) {
+        // Exactly once: whoever moves us out of REGISTERED delivers, everyone else (a late timeout, a second notify) walks away.
+        if ( !STATE.compareAndSet( this, REGISTERED, FIRING ) ) {
+            return;
+        }
+
+        // The VoucherManager may process a Voucher that has not yet Voucher.subscribe() - this is by design.
+        // Because we want to honor the voucher regardless of use of the voucher (you may not want to Voucher.subscribe() but instead Voucher.getPayload() later)
+        // So the payload is held on the voucher and handed over by whichever of us or Voucher.subscribe() gets to it first, see drainPending().
+        leaveManager( timedOut );
+
+        VoucherPayload<DATA> myPayload = payload;
+        if ( myPayload.getError() != null && mErrPayload != null ) {
+            myPayload = mErrPayload;
+        }
+        settle( myPayload ); // before the subscriber, who may resubscribe and re-arm us
+
+        if ( isEnabled() ) {
+            mPending = myPayload;
+            // DELIVERED before calling out, so a subscriber that resubscribes from its callback moves us straight back to REGISTERED
+            STATE.compareAndSet( this, FIRING, DELIVERED );
+            drainPending( batch, notifiedAtNanos );
+        } else {
+            parkDisabledPayload( myPayload );
+            STATE.compareAndSet( this, FIRING, DISABLED );
+            resubscribe();
+        }
+
+        // Deal with some hair circumstances
+        Exception err = payload.getError();
+        if ( err != null ) {
+
+            // honor the last will and testament of our beloved parent
+            // who's will just happens to take us down with them... SOBs
+            if ( err instanceof VoucherParentDestroyedException ) {
+                // even though we unregister above
+                // we do it again just in case the subscriber resubscribed
+                // we dont want a lingering connection
+                leaveManager( true );
+                destroy();
             }
+        }
+    }
 
-            // Deal with some hair circumstances
-            Exception err = payload.getError();
-            if ( err != null ) {
-
-                // honor the last will and testament of our beloved parent
-                // who's will just happens to take us down with them... SOBs
-                if ( err instanceof VoucherParentDestroyedException ) {
-                    // even though we do an unregister above
-                    // we do it again just in case the subscriber resubscribed
-                    // we dont want a lingering connection
-                    unregister();
-                    destroy();
-                }
+    /**
+     * Hand the pending payload to the subscriber, if there is both.<br>
+     * Called by the notifier after it sets the payload and by subscribe() after it sets the listener,
+     * the getAndSet makes sure only one of them gets it.
+     *
+     * @return true if this call delivered
+     */
+    private boolean drainPending( @Nullable DeliveryBatch batch, long notifiedAtNanos ) {
+        VoucherResponse<DATA> listener = mListener;
+        if ( listener == null || mPending == null ) {
+            return false;
+        }
+        @SuppressWarnings( "unchecked" )
+        VoucherPayload<DATA> payload = PENDING.getAndSet( this, null );
+        if ( payload == null ) {
+            return false;
+        }
+        try {
+            if ( notifiedAtNanos != 0 ) {
+                listener = new TimedResponse<>( listener, notifiedAtNanos );
+            }
+            VoucherHandler handler = mHandler;
+            if ( handler != null && batch != null ) {
+                batch.add( handler, this, payload, listener );
+            } else if ( handler != null ) {
+                handler.sendMessage( this, payload, listener );
+            } else {
+                listener.onResult( this, payload );
+            }
+        } catch ( Exception e ) {
+            Log.e( e );
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the voucher was destroyed and may not be registered again
+     */
+    final boolean arm() {
+        while ( true ) {
+            int state = mState;
+            if ( state == DESTROYED ) {
+                return false;
+            }
+            if ( state == REGISTERED ) {
+                return true;
+            }
+            if ( STATE.compareAndSet( this, state, REGISTERED ) ) {
+                mSettled = null; // observers from here on wait for the next payload
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Not generic so the array of them can be swapped with a field updater, the response's type is the voucher's.
+     */
+    private static final class Observer {
+        private static final AtomicIntegerFieldUpdater<Observer> FIRED = AtomicIntegerFieldUpdater.newUpdater( Observer.class, "mFired" );
+        private final VoucherResponse<?> mResponse;
+        private volatile int mFired;
+
+        Observer( VoucherResponse<?> response ) {
+            mResponse = response;
+        }
+
+        /**
+         * @return true for the one caller that gets to fire it, or to cancel it
+         */
+        boolean claim() {
+            return FIRED.compareAndSet( this, 0, 1 );
+        }
+
+        <DATA> void fire( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            if ( !claim() ) {
+                return;
+            }
+            @SuppressWarnings( "unchecked" )
+            VoucherResponse<DATA> response = (VoucherResponse<DATA>) mResponse;
+            try {
+                response.onResult( voucher, payload );
+            } catch ( Exception e ) {
+                Log.e( e );
+            }
+        }
+    }
+
+    /**
+     * Reports how long it took from the notify to the subscriber having handled the payload.
+     */
+    private static final class TimedResponse<DATA> implements VoucherResponse<DATA> {
+        private final VoucherResponse<DATA> mResponse;
+        private final long mNotifiedAtNanos;
+
+        TimedResponse( VoucherResponse<DATA> response, long notifiedAtNanos ) {
+            mResponse = response;
+            mNotifiedAtNanos = notifiedAtNanos;
+        }
+
+        @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            try {
+                mResponse.onResult( voucher, payload );
+            } finally {
+                VoucherMetrics.get().onDelivered( voucher.getKey(), System.nanoTime() - mNotifiedAtNanos );
             }
         }
     }
@@ -0,0 +1,15 @@
+package com.ath.voucher;
+
+/**
+ * The work behind the voucher was cancelled, by {@link Voucher#cancel()} or because every voucher waiting on it was unregistered or timed out.<br>
+ * Also what observers of a voucher get when it is unregistered before it was fulfilled, see {@link Voucher#observe}.<br>
+ * Resubscribing won't bring it back, request it again.
+ */
+public class VoucherCancelledException extends VoucherException {
+    private static final long serialVersionUID = 1L;
+
+    VoucherCancelledException( String message ) {
+        super( message );
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.ath.voucher;
+
+import android.support.annotation.NonNull;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Supplies keys for vouchers requested without one, see {@link VoucherManager#newVoucher()}.<br>
+ * Keys only need to be unique within their manager. Called concurrently, must be thread safe.
+ */
+public interface VoucherKeyGenerator {
+
+    /**
+     * The old default, globally unique but each key costs a trip through the shared SecureRandom.
+     */
+    VoucherKeyGenerator RANDOM_UUID = new VoucherKeyGenerator() {
+        @Override public String nextKey() {
+            return UUID.randomUUID().toString();
+        }
+    };
+
+    @NonNull
+    String nextKey();
+
+    /**
+     * The default, a counter per manager behind a prefix drawn at random for that manager:
+     * "#x1f9...:1", "#x1f9...:2" ... "#x1f9...:a" ... in base 36.<br>
+     * Your own keys can't collide with these short of guessing the prefix's 62 random bits, and unlike {@link #RANDOM_UUID} that costs one random draw per manager instead of per key.
+     */
+    final class Sequential implements VoucherKeyGenerator {
+        private final String mPrefix = "#" + Long.toString( UUID.randomUUID().getLeastSignificantBits() & Long.MAX_VALUE, Character.MAX_RADIX ) + ":";
+        private final AtomicLong mNext = new AtomicLong();
+
+        @Override public String nextKey() {
+            return mPrefix + Long.toString( mNext.incrementAndGet(), Character.MAX_RADIX );
+        }
+    }
+}
@@ -6,16 +6,22 @@ import android.support.annotation.Nullable;
 
 import com.ath.voucher.Voucher.VoucherAware;
 import com.ath.voucher.Voucher.VoucherLifecycleCallbacks;
+import com.ath.voucher.threadhandlers.VoucherHandlers;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -24,14 +30,27 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
  * Manages Vouchers and their subscribers by topic.<br>
  * <br>
  * Beware the default {@link VoucherPayload} cache policy, see {@link #setCachedPayloadTimeout(String, long)}.<br>
+ * <br>
+ * Keys are partitioned by hash into {@link #DEFAULT_SHARDS} shards by default, see {@link #attain(int, int)}.<br>
+ * Each shard owns its vouchers, its payload cache and its lock, so traffic on unrelated keys does not contend.<br>
+ * Locks only ever guard the manager's own state, subscribers are never called back while one is held.<br>
  */
 public class VoucherManager<DATA> {
 
     static final int DEFAULT_TIMEOUT = 2000;
+    public static final int DEFAULT_SHARDS = 16;
+    public static final int MAX_SHARDS = 1 << 30; // the largest power of two an int holds
     private int mDefaultVoucherTimeoutMillis = DEFAULT_TIMEOUT;
-    private ReentrantReadWriteLock mLock = new ReentrantReadWriteLock(); // consider hashing by key?
-    private Map<String, ConcurrentLinkedQueue<Voucher<DATA>>> mVouchers = Collections.synchronizedMap( new HashMap<String, ConcurrentLinkedQueue<Voucher<DATA>>>() );
-    private Map<String, VoucherPayload<DATA>> mLastPayload = new ConcurrentHashMap<>();
+    private final Shard[] mShards;
+    private final int mShardMask;
+    private volatile Executor mDispatcher = VoucherHandlers.getWorkerPool();
+    private volatile VoucherKeyGenerator mKeyGenerator = new VoucherKeyGenerator.Sequential();
+    private volatile KeyWatcher mKeyWatcher; // set by whoever does the work behind the keys, see VoucherWorker
+    private final Executor mDispatcherProxy = new Executor() {
+        @Override public void execute( Runnable command ) {
+            mDispatcher.execute( command );
+        }
+    };
     private WeakHashMap<Object, ConcurrentLinkedQueue<Voucher<DATA>>> mParentChildren = new WeakHashMap<>();
     private final VoucherLifecycleCallbacks mVoucherLifecycleCallbacks = new VoucherLifecycleCallbacks() {
         @Override public void onCreate( VoucherAware object ) {
@@ -59,21 +78,87 @@ public class VoucherManager<DATA> {
         }
     };
 
-    private VoucherManager() {
+    /**
+     * Told when nobody wants a key anymore, so the work behind it can stop.
+     */
+    interface KeyWatcher {
+        /**
+         * The last voucher on the key was given up on: unregistered by its owner, timed out by {@link Voucher#setTimeout(long)},
+         * or taken down with its parent. Fulfilment doesn't count, nor does giving up on {@link Voucher#await}.
+         */
+        void onKeyAbandoned( String key );
+
+        /**
+         * {@link Voucher#cancel()}, the key's vouchers are notified right after.
+         */
+        void onKeyCancelled( String key );
+    }
+
+    /**
+     * A slice of the key space.  Everything keyed lives here, nothing here is shared with another shard.
+     */
+    private final class Shard {
+        private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+        private final ConcurrentHashMap<String, KeyRegistry<DATA>> mVouchers = new ConcurrentHashMap<>();
+        private final PayloadCache<DATA> mLastPayload = new PayloadCache<>();
+        private final KeySerialExecutor mDispatchQueue = new KeySerialExecutor( mDispatcherProxy ); // keeps async notifies in order per key
+
+        private KeyRegistry<DATA> getVouchers( String key ) {
+            KeyRegistry<DATA> vouchers = mVouchers.get( key );
+            if ( vouchers == null ) {
+                KeyRegistry<DATA> created = new KeyRegistry<>();
+                vouchers = mVouchers.putIfAbsent( key, created );
+                if ( vouchers == null ) {
+                    vouchers = created;
+                }
+            }
+            return vouchers;
+        }
+
+        /**
+         * Doesn't create the key's registry, so reads on keys nobody is waiting on don't leave one behind.
+         */
+        private List<Voucher<DATA>> snapshot( String key ) {
+            KeyRegistry<DATA> vouchers = mVouchers.get( key );
+            return vouchers != null ? vouchers.snapshot() : new ArrayList<Voucher<DATA>>( 0 );
+        }
+    }
+
+    private VoucherManager( int shards ) {
+        if ( shards > MAX_SHARDS ) {
+            throw new IllegalArgumentException( "shards must be <= " + MAX_SHARDS );
+        }
+        int count = 1;
+        while ( count < shards ) {
+            count <<= 1;
+        }
+        @SuppressWarnings( "unchecked" ) // no generic array creation for an inner class of a generic type
+        Shard[] created = (Shard[]) Array.newInstance( Shard.class, count );
+        for ( int i = 0; i < count; i++ ) {
+            created[i] = new Shard();
+        }
+        mShards = created;
+        mShardMask = count - 1;
+    }
+
+    private Shard shard( String key ) {
+        int h = key.hashCode();
+        h ^= ( h >>> 16 ); // spread the high bits, String hashes of similar keys mostly differ there
+        return mShards[h & mShardMask];
     }
 
     private ReadLock readLock( String key ) {
-        return mLock.readLock();
+        return shard( key ).mLock.readLock();
     }
 
     private WriteLock writeLock( String key ) {
-        return mLock.writeLock();
+        return shard( key ).mLock.writeLock();
     }
 
     @MainThread
     @NeverThrows
     public static VoucherManager attain() {
-        VoucherManager manager = new VoucherManager();
+        VoucherManager manager = new VoucherManager( DEFAULT_SHARDS );
         return manager;
     }
 
@@ -87,6 +172,40 @@ public class VoucherManager<DATA> {
         return vm;
     }
 
+    /**
+     * @param shards how many shards keys are partitioned into, rounded up to a power of two.<br>
+     *               More shards let more unrelated keys proceed concurrently, 1 serializes every key behind a single lock.
+     * @throws IllegalArgumentException if shards is more than {@link #MAX_SHARDS}
+     */
+    public static VoucherManager attain( int defaultVoucherTimeoutMillis, int shards ) {
+        VoucherManager vm = new VoucherManager( Math.max( 1, shards ) );
+        if ( defaultVoucherTimeoutMillis < 0 ) {
+            vm.mDefaultVoucherTimeoutMillis = DEFAULT_TIMEOUT;
+        } else {
+            vm.mDefaultVoucherTimeoutMillis = defaultVoucherTimeoutMillis;
+        }
+        return vm;
+    }
+
+    public int getShardCount() {
+        return mShards.length;
+    }
+
+    /**
+     * Where {@link #notifyVouchersAsync(String, VoucherPayload)} delivers from.<br>
+     * Defaults to the shared worker pool, {@link VoucherHandlers#getWorkerPool()}.
+     */
+    public void setDispatcher( @NonNull Executor dispatcher ) {
+        mDispatcher = dispatcher;
+    }
+
+    /**
+     * How keys are made for {@link #newVoucher()}, defaults to a {@link VoucherKeyGenerator.Sequential} counter.
+     */
+    public void setKeyGenerator( @NonNull VoucherKeyGenerator keyGenerator ) {
+        mKeyGenerator = keyGenerator;
+    }
+
     public int getDefaultVoucherTimeoutMillis() {
         return mDefaultVoucherTimeoutMillis;
     }
@@ -118,26 +237,88 @@ public class VoucherManager<DATA> {
         }
     }
 
-    private Collection<Voucher<DATA>> getVouchers( String key ) {
-        ConcurrentLinkedQueue<Voucher<DATA>> vouchers = mVouchers.get( key );
-        if ( vouchers == null ) {
-            vouchers = new ConcurrentLinkedQueue<>();
-            mVouchers.put( key, vouchers );
-        }
-        return vouchers;
-    }
-
     /**
      * Default {@link VoucherPayload} Cache Policy<br>
      * is to cache the {@link VoucherPayload} indefinitely.
      * <p>
      * When the given millis has elapsed, the payload for the given key will be cleared.<br>
      * The timer resets when the payload is set.
+     * Subsequent vouchers for the key will not be honored until the payload is redelivered.
      *
-     * @param millis
+     * @param millis how long the key's payload lives, negative to fall back to {@link #setDefaultCachedPayloadTimeout(long)}
      */
     public void setCachedPayloadTimeout( @NonNull String key, long millis ) {
-        // FIXME: 3/12/17 @aarontharris - make setCachedPayloadTimeout work
+        shard( key ).mLastPayload.setTimeout( key, millis );
+    }
+
+    /**
+     * How long payloads live for keys without their own {@link #setCachedPayloadTimeout(String, long)}.
+     *
+     * @param millis negative to cache indefinitely (the default)
+     */
+    public void setDefaultCachedPayloadTimeout( long millis ) {
+        for ( Shard shard : mShards ) {
+            shard.mLastPayload.setDefaultTimeout( millis );
+        }
+    }
+
+    /**
+     * Bound the number of cached payloads, those not read lately are cleared first.<br>
+     * The bound is split evenly across shards rounding up, so up to maxPayloads + {@link #getShardCount()} - 1 may be kept.
+     * Unbounded by default.<br>
+     * Keys given their own {@link #setCachedPayloadTimeout(String, long)} are bounded the same way, the oldest setting is forgotten first.
+     */
+    public void setMaxCachedPayloads( int maxPayloads ) {
+        int perShard = ( Math.max( 1, maxPayloads ) + mShards.length - 1 ) / mShards.length;
+        for ( Shard shard : mShards ) {
+            shard.mLastPayload.setMaxEntries( perShard );
+        }
+    }
+
+    public int getCachedPayloadCount() {
+        int count = 0;
+        for ( Shard shard : mShards ) {
+            count += shard.mLastPayload.size();
+        }
+        return count;
+    }
+
+    public long getCachedPayloadHits() {
+        long count = 0;
+        for ( Shard shard : mShards ) {
+            count += shard.mLastPayload.getHitCount();
+        }
+        return count;
+    }
+
+    public long getCachedPayloadMisses() {
+        long count = 0;
+        for ( Shard shard : mShards ) {
+            count += shard.mLastPayload.getMissCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return payloads cleared to honor {@link #setMaxCachedPayloads(int)}
+     */
+    public long getCachedPayloadEvictions() {
+        long count = 0;
+        for ( Shard shard : mShards ) {
+            count += shard.mLastPayload.getEvictionCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return payloads cleared because their timeout elapsed
+     */
+    public long getCachedPayloadExpirations() {
+        long count = 0;
+        for ( Shard shard : mShards ) {
+            count += shard.mLastPayload.getExpirationCount();
+        }
+        return count;
     }
 
     /**
@@ -147,7 +328,7 @@ public class VoucherManager<DATA> {
         if ( key != null ) {
             writeLock( key ).lock();
             try {
-                mLastPayload.remove( key );
+                shard( key ).mLastPayload.remove( key );
             } finally {
                 writeLock( key ).unlock();
             }
@@ -159,7 +340,7 @@ public class VoucherManager<DATA> {
      */
     @Nullable
     VoucherPayload<DATA> getCachedPayload( @NonNull String key ) {
-        return mLastPayload.get( key );
+        return shard( key ).mLastPayload.get( key );
     }
 
     public void notifyVouchers( @NonNull String key, @NonNull VoucherPayload<DATA> payload ) {
@@ -177,33 +358,147 @@ public class VoucherManager<DATA> {
      */
     @NeverThrows
     public void notifyVouchers( @NonNull String key, @NonNull VoucherPayload<DATA> payload, boolean clearCache ) {
+        long notifiedAt = VoucherMetrics.isEnabled() ? System.nanoTime() : 0;
+        deliver( snapshot( key, payload, clearCache ), payload, notifiedAt );
+    }
+
+    public Future<Integer> notifyVouchersAsync( @NonNull String key, @NonNull VoucherPayload<DATA> payload ) {
+        return notifyVouchersAsync( key, payload, false );
+    }
+
+    /**
+     * Same as {@link #notifyVouchers(String, VoucherPayload, boolean)} but returns immediately.<br>
+     * The payload is cached and the current subscribers are captured before this returns,
+     * the subscribers are then notified from the {@link #setDispatcher(Executor) dispatcher}.<br>
+     * Async notifies for the same key are delivered in the order they were made, a slow subscriber only delays later notifies of its own key.<br>
+     * If the dispatcher refuses a delivery it runs on the calling thread instead.<br>
+     *
+     * @return completes with the number of vouchers notified once every one of them has been handed its payload
+     * (subscribers with a {@link Voucher#setHandler handler} may not have run yet)
+     */
+    @NeverThrows
+    public Future<Integer> notifyVouchersAsync( @NonNull String key, @NonNull final VoucherPayload<DATA> payload, boolean clearCache ) {
+        final long notifiedAt = VoucherMetrics.isEnabled() ? System.nanoTime() : 0;
+        final Collection<Voucher<DATA>> vouchers = snapshot( key, payload, clearCache );
+        FutureTask<Integer> delivery = new FutureTask<>( new Callable<Integer>() {
+            @Override public Integer call() throws Exception {
+                deliver( vouchers, payload, notifiedAt );
+                return vouchers.size();
+            }
+        } );
+        shard( key ).mDispatchQueue.execute( key, delivery );
+        return delivery;
+    }
+
+    public void notifyVouchersBatch( @NonNull Map<String, VoucherPayload<DATA>> payloads ) {
+        notifyVouchersBatch( payloads, false );
+    }
+
+    /**
+     * Same as calling {@link #notifyVouchers(String, VoucherPayload, boolean)} for every entry, but cheaper:<br>
+     * each shard's lock is taken once for all of its keys, subscribers are captured into a single list,
+     * and subscribers sharing a {@link Voucher#setHandler handler} are posted to it together.<br>
+     * Subscribers are handed their payloads in map iteration order, the same order separate notifies would, even when the keys live on different shards.<br>
+     * That order reaches subscribers without a handler and those on a serial handler (main, event loop) intact.
+     * Worker handlers deliver from many threads at once, so just like separate notifies they promise no order, per key or otherwise.
+     */
+    @NeverThrows
+    public void notifyVouchersBatch( @NonNull Map<String, VoucherPayload<DATA>> payloads, boolean clearCache ) {
+        long notifiedAt = VoucherMetrics.isEnabled() ? System.nanoTime() : 0;
+        // group by shard so each lock is taken once, remembering where each entry sits in the caller's order
+        List<Map.Entry<String, VoucherPayload<DATA>>> entries = new ArrayList<>( payloads.entrySet() );
+        Map<Shard, List<Integer>> byShard = new LinkedHashMap<>();
+        for ( int i = 0; i < entries.size(); i++ ) {
+            Shard shard = shard( entries.get( i ).getKey() );
+            List<Integer> indexes = byShard.get( shard );
+            if ( indexes == null ) {
+                indexes = new ArrayList<>();
+                byShard.put( shard, indexes );
+            }
+            indexes.add( i );
+        }
+
+        List<List<Voucher<DATA>>> captured = new ArrayList<>( Collections.<List<Voucher<DATA>>>nCopies( entries.size(), null ) );
+        for ( Map.Entry<Shard, List<Integer>> group : byShard.entrySet() ) {
+            Shard shard = group.getKey();
+            shard.mLock.writeLock().lock();
+            try {
+                for ( int index : group.getValue() ) {
+                    Map.Entry<String, VoucherPayload<DATA>> entry = entries.get( index );
+                    if ( !clearCache ) {
+                        shard.mLastPayload.put( entry.getKey(), entry.getValue() );
+                    }
+                    List<Voucher<DATA>> subscribers = shard.snapshot( entry.getKey() );
+                    captured.set( index, subscribers );
+                    VoucherMetrics.get().onNotify( entry.getKey(), subscribers.size() );
+                }
+            } finally {
+                shard.mLock.writeLock().unlock();
+            }
+        }
+
+        // then hand them out in map order, whichever shards the keys landed on
+        List<Voucher<DATA>> vouchers = new ArrayList<>();
+        List<VoucherPayload<DATA>> delivered = new ArrayList<>();
+        for ( int i = 0; i < entries.size(); i++ ) {
+            for ( Voucher<DATA> voucher : captured.get( i ) ) {
+                vouchers.add( voucher );
+                delivered.add( entries.get( i ).getValue() );
+            }
+        }
+
+        DeliveryBatch batch = new DeliveryBatch();
+        for ( int i = 0; i < vouchers.size(); i++ ) {
+            try {
+                vouchers.get( i ).notifySubscriber( delivered.get( i ), batch, notifiedAt );
+            } catch ( Exception e ) {
+                Log.e( e );
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Caches the payload and captures the key's current subscribers.
+     */
+    private Collection<Voucher<DATA>> snapshot( String key, VoucherPayload<DATA> payload, boolean clearCache ) {
         // writeLock: only notify when no oustanding calls to newVoucher().
-        writeLock( key ).lock();
+        // Only the cache and the snapshot are guarded, subscribers are called after we let go.
+        // Otherwise a subscriber notifying a key on another shard could deadlock against a subscriber doing the reverse.
+        Shard shard = shard( key );
+        shard.mLock.writeLock().lock();
         try {
             if ( !clearCache ) {
-                mLastPayload.put( key, payload );
+                shard.mLastPayload.put( key, payload );
             }
-            Collection<Voucher<DATA>> vouchers = new ArrayList<>( getVouchers( key ) );
-            if ( vouchers.size() > 0 ) {
-                for ( Voucher<DATA> voucher : vouchers ) {
-                    try {
-                        if ( voucher != null ) {
-                            voucher.notifySubscriber( payload );
-                        }
-                    } catch ( Exception e ) {
-                        Log.e( e );
-                    }
+            List<Voucher<DATA>> vouchers = shard.snapshot( key );
+            VoucherMetrics.get().onNotify( key, vouchers.size() );
+            return vouchers;
+        } finally {
+            shard.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param notifiedAtNanos when the notify was made, 0 when metrics are disabled
+     */
+    private void deliver( Collection<Voucher<DATA>> vouchers, VoucherPayload<DATA> payload, long notifiedAtNanos ) {
+        for ( Voucher<DATA> voucher : vouchers ) {
+            try {
+                if ( voucher != null ) {
+                    voucher.notifySubscriber( payload, null, notifiedAtNanos );
                 }
+            } catch ( Exception e ) {
+                Log.e( e );
             }
-        } finally {
-            writeLock( key ).unlock();
         }
     }
 
     public int voucherCount( @NonNull String key ) {
         readLock( key ).lock();
         try {
-            return getVouchers( key ).size();
+            KeyRegistry<DATA> vouchers = shard( key ).mVouchers.get( key );
+            return vouchers != null ? vouchers.size() : 0;
         } finally {
             readLock( key ).unlock();
         }
@@ -216,14 +511,16 @@ public class VoucherManager<DATA> {
      */
     void notifyVoucher( Voucher<DATA> voucher ) {
         // readLock: allow multiple newVoucher() calls to be requested concurrenly but not during notifyVouchers()
-        readLock( voucher.getKey() ).lock();
+        Shard shard = shard( voucher.getKey() );
+        VoucherPayload<DATA> copyPayload;
+        shard.mLock.readLock().lock();
         try {
-            VoucherPayload<DATA> copyPayload = mLastPayload.get( voucher.getKey() ); // protect against external mutations
-            if ( copyPayload != null ) {
-                voucher.notifySubscriber( copyPayload );
-            }
+            copyPayload = shard.mLastPayload.get( voucher.getKey() ); // protect against external mutations
         } finally {
-            readLock( voucher.getKey() ).unlock();
+            shard.mLock.readLock().unlock();
+        }
+        if ( copyPayload != null ) {
+            voucher.notifySubscriber( copyPayload );
         }
     }
 
@@ -234,16 +531,11 @@ public class VoucherManager<DATA> {
      * @param payload
      */
     void notifyVoucher( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
-        // readLock: allow multiple newVoucher() calls to be requested concurrenly but not during notifyVouchers()
-        readLock( voucher.getKey() ).lock();
-        try {
-            if ( payload == null ) {
-                payload = new VoucherPayload<>( (DATA) null );
-            }
-            voucher.notifySubscriber( payload );
-        } finally {
-            readLock( voucher.getKey() ).unlock();
+        // no lock: there is no manager state to read and subscribers are never called under a lock
+        if ( payload == null ) {
+            payload = new VoucherPayload<>( (DATA) null );
         }
+        voucher.notifySubscriber( payload );
     }
 
     /**
@@ -253,19 +545,14 @@ public class VoucherManager<DATA> {
      * @param payloads
      */
     void notifyVoucher( Voucher<DATA> voucher, Collection<VoucherPayload<DATA>> payloads ) {
-        // readLock: allow multiple newVoucher() calls to be requested concurrenly but not during notifyVouchers()
-        readLock( voucher.getKey() ).lock();
-        try {
-            for ( VoucherPayload<DATA> payload : payloads ) {
-                voucher.notifySubscriber( payload );
-            }
-        } finally {
-            readLock( voucher.getKey() ).unlock();
+        // no lock: there is no manager state to read and subscribers are never called under a lock
+        for ( VoucherPayload<DATA> payload : payloads ) {
+            voucher.notifySubscriber( payload );
         }
     }
 
     /**
-     * Generates a voucher with a random key
+     * Generates a voucher with a unique key, see {@link #setKeyGenerator(VoucherKeyGenerator)}
      */
     public Voucher<DATA> newVoucher() {
         return newVoucher( null );
@@ -274,27 +561,62 @@ public class VoucherManager<DATA> {
     @NeverThrows
     public Voucher<DATA> newVoucher( String key ) {
         if ( key == null || key.isEmpty() ) {
-            key = UUID.randomUUID().toString();
+            key = mKeyGenerator.nextKey();
         }
         Voucher<DATA> voucher = new Voucher<>( this, key );
         register( voucher );
         return voucher;
     }
 
+    /**
+     * Armed like {@link #newVoucher()} but never registered, nothing here holds onto it.<br>
+     * Only for vouchers fulfilled directly through {@link Voucher#notifySubscriber(VoucherPayload)}, see {@link Vouchers}.
+     */
+    Voucher<DATA> newDetachedVoucher() {
+        Voucher<DATA> voucher = new Voucher<>( this, mKeyGenerator.nextKey() );
+        voucher.arm();
+        return voucher;
+    }
+
     /**
      * This will remove any reference to the voucher from the VoucherManager and unsubscribe it.
+     *
+     * @param abandoned the voucher was given up on rather than fulfilled, tells the {@link KeyWatcher} if it was the key's last
      */
-    void unregister( @NonNull Voucher<DATA> voucher ) {
+    void unregister( @NonNull Voucher<DATA> voucher, boolean abandoned ) {
         if ( voucher != null ) {
-            ConcurrentLinkedQueue<Voucher<DATA>> vouchers = mVouchers.get( voucher.getKey() );
-            if ( vouchers != null ) {
-                vouchers.remove( voucher );
+            Shard shard = shard( voucher.getKey() );
+            KeyRegistry<DATA> vouchers = shard.mVouchers.get( voucher.getKey() );
+            if ( vouchers != null && vouchers.unregister( voucher ) ) {
+                VoucherMetrics.get().onVoucherUnregistered( voucher.getKey() );
+                if ( vouchers.isRetired() ) {
+                    shard.mVouchers.remove( voucher.getKey(), vouchers );
+                    KeyWatcher watcher = mKeyWatcher;
+                    if ( abandoned && watcher != null ) {
+                        watcher.onKeyAbandoned( voucher.getKey() );
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Every voucher on the key is fulfilled with a {@link VoucherCancelledException}, the {@link KeyWatcher} stops the work behind it.
+     */
+    void cancel( @NonNull String key ) {
+        KeyWatcher watcher = mKeyWatcher;
+        if ( watcher != null ) {
+            watcher.onKeyCancelled( key );
+        }
+        notifyVouchers( key, new VoucherPayload<DATA>( new VoucherCancelledException( "Cancelled " + key ) ), true );
+    }
+
+    void setKeyWatcher( @Nullable KeyWatcher watcher ) {
+        mKeyWatcher = watcher;
+    }
+
     boolean isRegistered( @NonNull Voucher<DATA> voucher ) {
-        return getVouchers( voucher.getKey() ).contains( voucher );
+        return KeyRegistry.isRegistered( voucher );
     }
 
     /**
@@ -304,7 +626,21 @@ public class VoucherManager<DATA> {
      * SEE {@link VoucherManager}
      */
     void register( @NonNull Voucher<DATA> voucher ) {
-        getVouchers( voucher.getKey() ).add( voucher );
+        if ( !voucher.arm() ) {
+            return; // destroyed with its parent
+        }
+        Shard shard = shard( voucher.getKey() );
+        while ( true ) {
+            KeyRegistry<DATA> vouchers = shard.getVouchers( voucher.getKey() );
+            if ( vouchers.register( voucher ) ) {
+                VoucherMetrics.get().onVoucherRegistered( voucher.getKey() );
+                return;
+            }
+            if ( !vouchers.isRetired() ) {
+                return; // already registered
+            }
+            shard.mVouchers.remove( voucher.getKey(), vouchers ); // emptied under us, start a fresh one
+        }
     }
 
 }
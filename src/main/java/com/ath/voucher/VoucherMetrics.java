@@ -0,0 +1,98 @@
+package com.ath.voucher;
+
+import android.support.annotation.Nullable;
+
+import com.ath.voucher.threadhandlers.VoucherHandler;
+
+/**
+ * <pre>
+ * Instrumentation hooks for Voucher's internals.
+ *
+ * Extend and override only what you care about, then {@link #install(VoucherMetrics)}.
+ * Nothing is installed by default ({@link #NONE}), in which case no timestamps are taken and nothing is wrapped,
+ * the remaining cost is a call to an empty method.
+ *
+ * Hooks are called on hot paths and from any thread, keep them cheap and never block.
+ * See {@link InMemoryVoucherMetrics} for a ready made registry.
+ * </pre>
+ */
+public abstract class VoucherMetrics {
+    public static final VoucherMetrics NONE = new VoucherMetrics() {
+    };
+
+    private static volatile VoucherMetrics sInstalled = NONE;
+
+    /**
+     * @param metrics null to uninstall
+     */
+    public static void install( @Nullable VoucherMetrics metrics ) {
+        sInstalled = metrics == null ? NONE : metrics;
+    }
+
+    public static VoucherMetrics get() {
+        return sInstalled;
+    }
+
+    /**
+     * Guard anything that costs more than the hook call itself, like taking a timestamp.
+     */
+    public static boolean isEnabled() {
+        return sInstalled != NONE;
+    }
+
+    /**
+     * A voucher was registered with its manager and can now be notified.
+     */
+    public void onVoucherRegistered( String key ) {
+    }
+
+    /**
+     * A voucher left its manager, either it was notified or it was unregistered.
+     */
+    public void onVoucherUnregistered( String key ) {
+    }
+
+    /**
+     * @param fanOut how many vouchers the payload is about to be delivered to
+     */
+    public void onNotify( String key, int fanOut ) {
+    }
+
+    /**
+     * @param nanos from the notify call to the subscriber's {@link Voucher.VoucherResponse#onResult} returning,
+     *              including any time spent waiting in a {@link VoucherHandler}
+     */
+    public void onDelivered( String key, long nanos ) {
+    }
+
+    /**
+     * @param depth work posted to the handler that has not run yet, including this one
+     */
+    public void onHandlerQueued( VoucherHandler handler, int depth ) {
+    }
+
+    /**
+     * A {@link Watcher} reached its timeout.
+     */
+    public void onTimeoutFired() {
+    }
+
+    /**
+     * @param queueWaitNanos from {@link VoucherWorker#enqueueVoucher} to the task starting
+     * @param executionNanos the task itself
+     */
+    public void onWorkerTask( String key, long queueWaitNanos, long executionNanos ) {
+    }
+
+    /**
+     * @param queueWaitNanos from the task entering its lane to it starting on a worker thread
+     */
+    public void onWorkerLaneWait( VoucherWorker.Lane lane, long queueWaitNanos ) {
+    }
+
+    /**
+     * A {@link VoucherManager} looked up its cached payload for the key.
+     */
+    public void onPayloadCacheLookup( String key, boolean hit ) {
+    }
+}
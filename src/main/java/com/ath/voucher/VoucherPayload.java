@@ -10,6 +10,7 @@ import java.util.List;
 public class VoucherPayload<DATA> {
     private Exception mError;
     private DATA mData;
+    private boolean mStale;
 
     private VoucherPayload() {
     }
@@ -45,6 +46,17 @@ public class VoucherPayload<DATA> {
         return out;
     }
 
+    /**
+     * The same payload marked as served past its freshness, see {@link #isStale()}.
+     */
+    VoucherPayload<DATA> asStale() {
+        VoucherPayload<DATA> stale = new VoucherPayload<>();
+        stale.mError = mError;
+        stale.mData = mData;
+        stale.mStale = true;
+        return stale;
+    }
+
     public DATA getData() {
         return mData;
     }
@@ -53,6 +65,13 @@ public class VoucherPayload<DATA> {
         return mError;
     }
 
+    /**
+     * True when served from a cache past its freshness while a refresh runs, see {@link VoucherWorker#setResultCache(long, long, int)}.
+     */
+    public boolean isStale() {
+        return mStale;
+    }
+
     /**
      * <pre>
      * Voucher guarantees that any unhandled exceptions from end to end of voucher's execution are delivered via the payload.
@@ -0,0 +1,21 @@
+package com.ath.voucher;
+
+/**
+ * The {@link VoucherWorker} was at capacity and its {@link VoucherWorker.Overflow} policy turned the task away,
+ * dropped it to make room for newer work, or the worker's executor would not take it with nothing else running.<br>
+ * This is overload, not a failure of the task itself, back off or shed the request.<br>
+ * <p>
+ * See {@link VoucherWorker#setQueueCapacity(int, VoucherWorker.Overflow)}
+ */
+public class VoucherRejectedException extends VoucherException {
+    private static final long serialVersionUID = 1L;
+
+    VoucherRejectedException( String message ) {
+        super( message );
+    }
+
+    VoucherRejectedException( String message, Exception cause ) {
+        super( message, cause );
+    }
+
+}
@@ -1,61 +1,282 @@
 package com.ath.voucher;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 
 public class VoucherWorker {
     private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int CORE_POOL_SIZE = Math.max( 2, Math.min( CPU_COUNT - 1, 4 ) );
     private static final int MAX_POOL_SIZE = CPU_COUNT * 2 + 1;
     private static final long KEEP_LIFE_TIME_IN_SECOND = 30L;
     private static final int INITAL_CAPACITY = 10;
+    private static final ThreadLocal<KeyTask<?, ?>> CURRENT = new ThreadLocal<>();
 
     public interface WorkerTask<INPUT, RESULT> {
         RESULT doInBackground( INPUT input ) throws Exception;
     }
 
+    /**
+     * Priority of queued work, highest first, see {@link #setLaneShare(Lane, int)} and {@link #setLaneAging(long)}.
+     */
+    public enum Lane {
+        INTERACTIVE, // someone is waiting on it right now
+        DEFAULT,
+        BACKGROUND // prefetch and bulk work, by default limited to half the worker
+    }
+
+    /**
+     * What happens to new work once the queue is at capacity, see {@link #setQueueCapacity(int, Overflow)}.
+     */
+    public enum Overflow {
+        FAIL_FAST, // the new work is rejected with a VoucherRejectedException
+        CALLER_RUNS, // the producer runs the new work itself, slowing it down
+        DROP_OLDEST // the oldest queued work of the same or a lower lane is rejected to make room
+    }
+
     @SuppressWarnings( "unchecked" )
     private VoucherManager<Object> vms = VoucherManager.attain();
     private final NonReentrantLockPool mLocks = new NonReentrantLockPool();
+    private volatile PayloadCache<Object> mResults; // null unless opted in, see setResultCache()
+    private final ConcurrentHashMap<String, KeyTask<?, ?>> mFlights = new ConcurrentHashMap<>(); // the task in flight per key
     private Executor mExecutor = null;
+    private volatile LaneScheduler mLanes; // made on first use, see lanes()
+    private final Object mLanesLock = new Object();
 
     public VoucherWorker() {
         mExecutor = initExecutor();
+        vms.setKeyWatcher( new FlightCanceller() );
     }
 
+    /**
+     * For long running tasks to poll, true once the task running on this thread was cancelled.<br>
+     * A task is cancelled when the last voucher waiting on it is unregistered or times out, or on {@link Voucher#cancel()}.<br>
+     * While other vouchers still wait on the key it keeps running, giving up on {@link Voucher#await} never cancels it.<br>
+     * Blocking calls in the task see an interrupt instead, its result is thrown away either way.
+     */
+    public static boolean isCancelled() {
+        KeyTask<?, ?> task = CURRENT.get();
+        return task != null && task.isCancelled();
+    }
+
+    /**
+     * Up to {@link #initConcurrency()} threads, each started as work arrives and let go after idling a while.<br>
+     * The lanes never hand it more than that, so its own queue only bridges a finishing thread picking up the next task.
+     */
     protected Executor initExecutor() {
-        return new ThreadPoolExecutor(
-                CORE_POOL_SIZE,
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                MAX_POOL_SIZE,
                 MAX_POOL_SIZE,
                 KEEP_LIFE_TIME_IN_SECOND,
                 TimeUnit.SECONDS,
-                new LinkedBlockingDeque( INITAL_CAPACITY )
+                new LinkedBlockingQueue<Runnable>()
         );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * How many tasks are handed to the executor at once, the rest wait in their {@link Lane}.<br>
+     * Match it to the threads the executor runs without queueing, or its own queue defeats the lanes.<br>
+     * Defaults to twice the processors plus one, the most threads the executor used to grow to,
+     * so with the default queue capacity the worker takes as much work as it did before lanes.<br>
+     * Read once on first use, not from the constructor, so an override may rely on its own fields.
+     */
+    protected int initConcurrency() {
+        return MAX_POOL_SIZE;
     }
 
     protected final Executor getExecutor() {
         return mExecutor;
     }
 
+    private LaneScheduler lanes() {
+        LaneScheduler lanes = mLanes;
+        if ( lanes == null ) {
+            synchronized ( mLanesLock ) {
+                lanes = mLanes;
+                if ( lanes == null ) {
+                    lanes = new LaneScheduler( mExecutor, initConcurrency() );
+                    lanes.setCapacity( INITAL_CAPACITY, Overflow.FAIL_FAST );
+                    mLanes = lanes;
+                }
+            }
+        }
+        return lanes;
+    }
+
+    /**
+     * @param percent of the worker's concurrency the lane may fill at once, at least one task always runs.
+     *                Defaults are 100 for {@link Lane#INTERACTIVE} and {@link Lane#DEFAULT}, 50 for {@link Lane#BACKGROUND}.
+     */
+    public final VoucherWorker setLaneShare( @NonNull Lane lane, int percent ) {
+        lanes().setShare( lane, percent );
+        return this;
+    }
+
+    /**
+     * Work queued longer than this goes ahead of younger work in higher lanes, so no lane starves.<br>
+     * Defaults to {@value LaneScheduler#DEFAULT_AGING_MILLIS}ms.
+     */
+    public final VoucherWorker setLaneAging( long millis ) {
+        lanes().setAging( millis );
+        return this;
+    }
+
+    /**
+     * <pre>
+     * Bound the work waiting across all lanes.
+     * Defaults to {@value #INITAL_CAPACITY} with {@link Overflow#FAIL_FAST}, what the executor's own queue held before lanes.
+     * With the default {@link #initConcurrency()} that is as much as before: the old max threads running plus 10 waiting.
+     * A subclass that lowers the concurrency without raising the capacity takes less work than it used to.
+     * Rejected voucher tasks notify their key with a {@link VoucherRejectedException} so overload is told apart from failure.
+     *
+     * {@link Overflow#CALLER_RUNS} runs on the thread calling enqueue, avoid it where that is the main thread.
+     * </pre>
+     */
+    public final VoucherWorker setQueueCapacity( int capacity, @NonNull Overflow overflow ) {
+        lanes().setCapacity( capacity, overflow );
+        return this;
+    }
+
+    public final int getQueueCapacity() {
+        return lanes().getCapacity();
+    }
+
+    /**
+     * @return tasks waiting across all lanes, not yet handed to the executor
+     */
+    public final int getQueued() {
+        return lanes().getQueued();
+    }
+
+    /**
+     * @return tasks handed to the executor that have not finished
+     */
+    public final int getRunning() {
+        return lanes().getRunning();
+    }
+
+    /**
+     * Block a producer until the queue has room, so it can slow down instead of being rejected.<br>
+     * Room is not reserved, another producer may take it first.
+     *
+     * @return false if the timeout passed first
+     */
+    public final boolean awaitCapacity( long timeout, @NonNull TimeUnit unit ) throws InterruptedException {
+        return lanes().awaitCapacity( timeout, unit );
+    }
+
+    /**
+     * @return tasks waiting in the lane, not yet handed to the executor
+     */
+    public final int getQueued( @NonNull Lane lane ) {
+        return lanes().getQueued( lane );
+    }
+
+    /**
+     * Same as {@link #setResultCache(long, long, int)} without a stale window.
+     */
+    public final VoucherWorker setResultCache( long ttlMillis, int maxEntries ) {
+        return setResultCache( ttlMillis, 0, maxEntries );
+    }
+
+    /**
+     * <pre>
+     * Opt in to remembering each key's last successful result.
+     * Requests for the key within ttl are fulfilled from memory, nothing is submitted to the executor.
+     *
+     * - Errors are never remembered, the next request runs the task again.
+     * - Only requests with a key are cached, generated keys never repeat.
+     * - Beyond maxEntries a result that has not been read lately is evicted.
+     *
+     * Stale while revalidate, for staleMillis past ttl:
+     * - Requests are fulfilled right away with the old result, marked {@link VoucherPayload#isStale()}.
+     * - One refresh runs in the background, deduped with any request in flight for the key.
+     * - Callers of {@link #enqueueVoucher(String, Object, WorkerTask, boolean)} asking for it get the refreshed result as a second delivery.
+     * </pre>
+     *
+     * @param ttlMillis   0 or less turns the cache off and drops what it held
+     * @param staleMillis 0 for no stale window, results are dropped at ttl
+     */
+    public final VoucherWorker setResultCache( long ttlMillis, long staleMillis, int maxEntries ) {
+        if ( ttlMillis <= 0 ) {
+            mResults = null;
+            return this;
+        }
+        PayloadCache<Object> results = new PayloadCache<>();
+        results.setDefaultTimeout( ttlMillis );
+        results.setStaleWindow( staleMillis );
+        results.setMaxEntries( maxEntries );
+        mResults = results;
+        return this;
+    }
+
+    /**
+     * Forget the key's cached result, the next request runs the task.
+     */
+    public final void invalidateResult( @NonNull String key ) {
+        PayloadCache<Object> results = mResults;
+        if ( results != null ) {
+            results.remove( key );
+        }
+    }
+
     /**
      * <pre>
      * Basic execution of a {@link Runnable}
      * Uncaught exceptions within runnable will crash the app.
      * </pre>
+     *
+     * @throws RejectedExecutionException if the queue is full, see {@link #tryEnqueue(Runnable)} to get false instead
      */
     public final void enqueue( Runnable run ) {
-        getExecutor().execute( run );
+        enqueue( run, Lane.DEFAULT );
+    }
+
+    /**
+     * @see #enqueue(Runnable)
+     */
+    public final void enqueue( Runnable run, @NonNull Lane lane ) {
+        if ( !tryEnqueue( run, lane ) ) {
+            throw new RejectedExecutionException( "Worker queue is full, " + lane + " rejected" );
+        }
+    }
+
+    /**
+     * @return false if rejected, see {@link #setQueueCapacity(int, Overflow)}
+     * @see #enqueue(Runnable)
+     */
+    public final boolean tryEnqueue( Runnable run ) {
+        return tryEnqueue( run, Lane.DEFAULT );
+    }
+
+    /**
+     * A runnable dropped by {@link Overflow#DROP_OLDEST} is simply not run.
+     *
+     * @return false if rejected, see {@link #setQueueCapacity(int, Overflow)}
+     * @see #enqueue(Runnable)
+     */
+    public final boolean tryEnqueue( Runnable run, @NonNull Lane lane ) {
+        try {
+            lanes().execute( lane, run );
+            return true;
+        } catch ( VoucherRejectedException e ) {
+            return false;
+        }
     }
 
     /**
      * Get a voucher in exchange for your request.<br>
      * Allows you to group requests by key so that only the first concurrent request goes async.
-     * Subsequent concurrent requests with the same key will be notified when the first completes.
+     * Subsequent concurrent requests with the same key will be notified when the first completes.<br>
+     * With {@link #setResultCache(long, long, int)} requests after it completes are fulfilled from its result until it expires.
      *
      * @param key  a unique key will be generated if none is provided.
      * @param task
@@ -63,39 +284,239 @@ public class VoucherWorker {
      */
     @NeverThrows
     public final <INPUT, RESULT> Voucher<RESULT> enqueueVoucher( @Nullable String key, final INPUT input, final WorkerTask<INPUT, RESULT> task ) {
+        return enqueueVoucher( key, input, task, false, Lane.DEFAULT );
+    }
+
+    /**
+     * @param lane where the task waits for a thread, when it has to run
+     * @see #enqueueVoucher(String, Object, WorkerTask)
+     */
+    @NeverThrows
+    public final <INPUT, RESULT> Voucher<RESULT> enqueueVoucher( @Nullable String key, final INPUT input, final WorkerTask<INPUT, RESULT> task, @NonNull Lane lane ) {
+        return enqueueVoucher( key, input, task, false, lane );
+    }
+
+    /**
+     * @param refreshed when served a stale result, stay subscribed for the refreshed one too, see {@link #setResultCache(long, long, int)}
+     * @see #enqueueVoucher(String, Object, WorkerTask)
+     */
+    @NeverThrows
+    public final <INPUT, RESULT> Voucher<RESULT> enqueueVoucher( @Nullable String key, final INPUT input, final WorkerTask<INPUT, RESULT> task, boolean refreshed ) {
+        return enqueueVoucher( key, input, task, refreshed, Lane.DEFAULT );
+    }
+
+    /**
+     * @see #enqueueVoucher(String, Object, WorkerTask, boolean)
+     * @see #enqueueVoucher(String, Object, WorkerTask, Lane)
+     */
+    @NeverThrows
+    public final <INPUT, RESULT> Voucher<RESULT> enqueueVoucher( @Nullable String key, final INPUT input, final WorkerTask<INPUT, RESULT> task, boolean refreshed, @NonNull Lane lane ) {
+        return enqueueVoucher( key, input, task, refreshed, lane, false );
+    }
+
+    /**
+     * @param forked handed to {@link #dispatch} as is, see {@link ForkJoinVoucherWorker#fork}
+     */
+    final <INPUT, RESULT> Voucher<RESULT> enqueueVoucher( @Nullable String key, final INPUT input, final WorkerTask<INPUT, RESULT> task, boolean refreshed, Lane lane, boolean forked ) {
         @SuppressWarnings( "unchecked" )
         Voucher<RESULT> voucher = (Voucher<RESULT>) vms.newVoucher( key );
         final String voucherKey = voucher.getKey();
+        final PayloadCache<Object> results = key != null && !key.isEmpty() ? mResults : null;
+        boolean revalidating = false;
+
+        if ( results != null ) {
+            @SuppressWarnings( "unchecked" )
+            VoucherPayload<RESULT> cached = (VoucherPayload<RESULT>) results.get( voucherKey );
+            if ( cached != null && !cached.isStale() ) {
+                voucher.notifySubscriber( cached ); // just this voucher, anyone else on the key is waiting on a task in flight
+                return voucher;
+            }
+            if ( cached != null ) {
+                revalidating = true;
+                if ( refreshed ) {
+                    voucher.notifyInterim( cached ); // stays registered, the refresh below notifies it again
+                } else {
+                    voucher.notifySubscriber( cached );
+                }
+            }
+        }
+
+        execute( voucherKey, input, task, results, lane, forked, revalidating );
+        return voucher;
+    }
+
+    /**
+     * Run the task for the key unless it is already running, the result notifies every voucher on the key.
+     *
+     * @param revalidating a stale result was already served, keep going even if nobody waits for the refresh
+     */
+    private <INPUT, RESULT> void execute( final String voucherKey, final INPUT input, final WorkerTask<INPUT, RESULT> task, final PayloadCache<Object> results, Lane lane, boolean forked, boolean revalidating ) {
+        if ( !mLocks.tryLock( voucherKey ) ) {
+            return; // single flight, the task in progress will notify
+        }
+        KeyTask<INPUT, RESULT> flight = new KeyTask<>( voucherKey, input, task, results, lane, revalidating );
+        mFlights.put( voucherKey, flight );
+        try {
+            dispatch( voucherKey, lane, flight, forked );
+        } catch ( Exception e ) {
+            // Rejected by the overflow policy, or failed to queue -- either way nobody is running it
+            mFlights.remove( voucherKey, flight );
+            mLocks.unlock( voucherKey );
+            vms.notifyVouchersClearCache( voucherKey, new VoucherPayload<>( e ) );
+        }
+    }
 
-        if ( mLocks.tryLock( voucherKey ) ) {
+    /**
+     * Queue the key's task in its lane, overridden to hand forked tasks straight to a work stealing pool.
+     */
+    void dispatch( String voucherKey, Lane lane, Runnable task, boolean forked ) throws VoucherRejectedException {
+        lanes().execute( lane, task );
+    }
+
+    /**
+     * Stops the key's task once nobody wants it, or on {@link Voucher#cancel()}.
+     */
+    private final class FlightCanceller implements VoucherManager.KeyWatcher {
+        @Override public void onKeyAbandoned( String key ) {
+            KeyTask<?, ?> flight = mFlights.get( key );
+            if ( flight != null && !flight.mRevalidating && vms.voucherCount( key ) == 0 ) {
+                flight.cancel( true ); // notified anyway, in case a request slipped in while we decided
+            }
+        }
+
+        @Override public void onKeyCancelled( String key ) {
+            KeyTask<?, ?> flight = mFlights.get( key );
+            if ( flight != null ) {
+                flight.cancel( false ); // the manager notifies the key
+            }
+        }
+    }
+
+    /**
+     * <pre>
+     * Runs the task and notifies every voucher on the key, or tells them it was dropped or cancelled.
+     *
+     * QUEUED -> RUNNING -> DONE
+     *        \-> CANCELLED (removed from its lane, or interrupted while running)
+     * Whoever leaves QUEUED / RUNNING releases the key and notifies it, exactly once.
+     * </pre>
+     */
+    private final class KeyTask<INPUT, RESULT> implements Runnable, LaneScheduler.Rejectable {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final String mKey;
+        private final INPUT mInput;
+        private final WorkerTask<INPUT, RESULT> mTask;
+        private final PayloadCache<Object> mResults;
+        private final Lane mLane;
+        private final boolean mRevalidating;
+        private final long mQueuedAt = VoucherMetrics.isEnabled() ? System.nanoTime() : 0;
+        private volatile int mState = QUEUED; // written under this
+        private Thread mRunner; // guarded by this, set while RUNNING
+        private boolean mInterruptedByUs; // guarded by this, cancel() interrupted mRunner and run() must clear it
+
+        KeyTask( String key, INPUT input, WorkerTask<INPUT, RESULT> task, PayloadCache<Object> results, Lane lane, boolean revalidating ) {
+            mKey = key;
+            mInput = input;
+            mTask = task;
+            mResults = results;
+            mLane = lane;
+            mRevalidating = revalidating;
+        }
+
+        @Override public void run() {
+            synchronized ( this ) {
+                if ( mState != QUEUED ) {
+                    return; // cancelled while it waited
+                }
+                mState = RUNNING;
+                mRunner = Thread.currentThread();
+            }
+            long startedAt = mQueuedAt != 0 ? System.nanoTime() : 0;
+            KeyTask<?, ?> outer = CURRENT.get(); // a forked task joined in place runs inside its parent
+            CURRENT.set( this );
+            RESULT result = null;
+            Exception error = null;
             try {
-                getExecutor().execute( new Runnable() {
-                    @Override public void run() {
-                        RESULT result = null;
-                        Exception error = null;
-                        try {
-                            result = task.doInBackground( input );
-                            // cache ?
-                        } catch ( Exception e ) {
-                            error = e;
-                        } finally {
-                            mLocks.unlock( voucherKey );
-                        }
-
-                        if ( error != null ) {
-                            vms.notifyVouchersClearCache( voucherKey, new VoucherPayload<>( error ) );
-                        } else {
-                            vms.notifyVouchersClearCache( voucherKey, new VoucherPayload<>( (Object) result ) );
-                        }
-                    }
-                } );
+                result = mTask.doInBackground( mInput );
             } catch ( Exception e ) {
-                // Failed to attain executor -- should be extremely rare if ever but we want to be thorough
-                vms.notifyVouchersClearCache( voucherKey, new VoucherPayload<>( e ) );
-                mLocks.unlock( voucherKey );
+                error = e;
+            } finally {
+                CURRENT.set( outer );
+            }
+            synchronized ( this ) {
+                mRunner = null;
+                if ( mState == CANCELLED ) {
+                    if ( mInterruptedByUs ) {
+                        Thread.interrupted(); // ours, don't leak it into the pool thread's next task
+                    }
+                    return; // cancel() released the key and told its vouchers
+                }
+                mState = DONE;
+            }
+            mFlights.remove( mKey, this );
+            mLocks.unlock( mKey );
+            if ( mQueuedAt != 0 ) {
+                VoucherMetrics.get().onWorkerTask( mKey, startedAt - mQueuedAt, System.nanoTime() - startedAt );
+            }
+
+            if ( error != null ) {
+                vms.notifyVouchersClearCache( mKey, new VoucherPayload<>( error ) );
+            } else {
+                VoucherPayload<Object> payload = new VoucherPayload<>( (Object) result );
+                if ( mResults != null ) {
+                    mResults.put( mKey, payload ); // before notifying, so a request woken by it can hit
+                }
+                vms.notifyVouchersClearCache( mKey, payload );
             }
         }
 
-        return voucher;
+        @Override public void onRejected( VoucherRejectedException e ) {
+            synchronized ( this ) {
+                if ( mState != QUEUED ) {
+                    return;
+                }
+                mState = CANCELLED;
+            }
+            release( e );
+        }
+
+        /**
+         * @param notify tell the key's vouchers, unless the caller is about to
+         */
+        void cancel( boolean notify ) {
+            boolean queued;
+            synchronized ( this ) {
+                if ( mState == DONE || mState == CANCELLED ) {
+                    return;
+                }
+                queued = mState == QUEUED;
+                mState = CANCELLED;
+                if ( !queued && !mRunner.isInterrupted() ) {
+                    // Already interrupted means someone else did it, a parent running this fork in place: leave theirs alone
+                    mRunner.interrupt();
+                    mInterruptedByUs = true;
+                }
+            }
+            if ( queued ) {
+                lanes().remove( mLane, this );
+            }
+            release( notify ? new VoucherCancelledException( "Cancelled " + mKey ) : null );
+        }
+
+        boolean isCancelled() {
+            return mState == CANCELLED;
+        }
+
+        private void release( @Nullable Exception error ) {
+            mFlights.remove( mKey, this );
+            mLocks.unlock( mKey );
+            if ( error != null ) {
+                vms.notifyVouchersClearCache( mKey, new VoucherPayload<>( error ) );
+            }
+        }
     }
 }
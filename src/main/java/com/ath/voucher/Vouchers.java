@@ -0,0 +1,264 @@
+package com.ath.voucher;
+
+import android.support.annotation.NonNull;
+
+import com.ath.voucher.Voucher.VoucherResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <pre>
+ * Composition of vouchers, see also {@link Voucher#map} and {@link Voucher#flatMap}.
+ *
+ * - Composing observes the source vouchers, their own subscriptions and handlers are left alone.
+ * - Intermediate stages run inline on whichever thread fulfills their source, they never hop through a handler.
+ *   Only the handler of the voucher you finally subscribe to is honored, so keep functions quick.
+ * - Errors follow {@link VoucherPayload}: a failed source skips the function and its error is passed along,
+ *   an exception thrown by a function becomes the error.
+ * - A source unregistered before it was fulfilled counts as failed, with a {@link VoucherCancelledException}.
+ *
+ * Composed vouchers are not cached or registered by any manager, each is delivered to its own subscriber once
+ * and is collected with its sources if it never settles.
+ * </pre>
+ */
+public final class Vouchers {
+
+    /**
+     * Makes every composed voucher, keys are generated so stages never meet. Holds none of them.
+     */
+    @SuppressWarnings( "unchecked" )
+    private static final VoucherManager<Object> STAGES = VoucherManager.attain();
+
+    private Vouchers() {
+    }
+
+    public interface Function<IN, OUT> {
+        OUT apply( IN input ) throws Exception;
+    }
+
+    public interface BiFunction<A, B, OUT> {
+        OUT apply( A a, B b ) throws Exception;
+    }
+
+    /**
+     * Fulfilled with the data of every voucher, in order, once they all succeed.<br>
+     * Fails with the first error as soon as any of them fails.
+     */
+    @SafeVarargs
+    public static <DATA> Voucher<List<DATA>> allOf( @NonNull Voucher<DATA>... vouchers ) {
+        List<Voucher<DATA>> list = new ArrayList<>( vouchers.length );
+        for ( Voucher<DATA> voucher : vouchers ) {
+            list.add( voucher ); // element by element, lint counts handing the array itself on as heap pollution
+        }
+        return allOf( list );
+    }
+
+    public static <DATA> Voucher<List<DATA>> allOf( @NonNull List<Voucher<DATA>> vouchers ) {
+        final Voucher<List<DATA>> stage = newStage();
+        final int count = vouchers.size();
+        if ( count == 0 ) {
+            complete( stage, new VoucherPayload<List<DATA>>( new ArrayList<DATA>( 0 ) ) );
+            return stage;
+        }
+        final AtomicReferenceArray<DATA> results = new AtomicReferenceArray<>( count );
+        final AtomicInteger remaining = new AtomicInteger( count );
+        for ( int i = 0; i < count; i++ ) {
+            final int index = i;
+            subscribeInline( vouchers.get( i ), new VoucherResponse<DATA>() {
+                @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+                    if ( payload.getError() != null ) {
+                        if ( remaining.getAndSet( -1 ) > 0 ) {
+                            complete( stage, new VoucherPayload<List<DATA>>( payload.getError() ) );
+                        }
+                        return;
+                    }
+                    results.set( index, payload.getData() );
+                    if ( countDown( remaining ) ) {
+                        List<DATA> data = new ArrayList<>( count );
+                        for ( int j = 0; j < count; j++ ) {
+                            data.add( results.get( j ) );
+                        }
+                        complete( stage, new VoucherPayload<>( data ) );
+                    }
+                }
+            } );
+        }
+        return stage;
+    }
+
+    /**
+     * Fulfilled by the first voucher to succeed.<br>
+     * Fails only when all of them fail, with the last error.
+     */
+    @SafeVarargs
+    public static <DATA> Voucher<DATA> anyOf( @NonNull Voucher<DATA>... vouchers ) {
+        List<Voucher<DATA>> list = new ArrayList<>( vouchers.length );
+        for ( Voucher<DATA> voucher : vouchers ) {
+            list.add( voucher ); // element by element, lint counts handing the array itself on as heap pollution
+        }
+        return anyOf( list );
+    }
+
+    public static <DATA> Voucher<DATA> anyOf( @NonNull List<Voucher<DATA>> vouchers ) {
+        final Voucher<DATA> stage = newStage();
+        if ( vouchers.isEmpty() ) {
+            complete( stage, new VoucherPayload<DATA>( new IllegalArgumentException( "anyOf needs at least one voucher" ) ) );
+            return stage;
+        }
+        final AtomicInteger remaining = new AtomicInteger( vouchers.size() );
+        for ( Voucher<DATA> voucher : vouchers ) {
+            subscribeInline( voucher, new VoucherResponse<DATA>() {
+                @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+                    if ( payload.getError() == null ) {
+                        if ( remaining.getAndSet( -1 ) > 0 ) {
+                            complete( stage, payload );
+                        }
+                    } else if ( countDown( remaining ) ) {
+                        complete( stage, payload );
+                    }
+                }
+            } );
+        }
+        return stage;
+    }
+
+    /**
+     * Fulfilled with fn applied to both vouchers' data once both succeed.<br>
+     * Fails with the first error as soon as either fails.
+     */
+    public static <A, B, OUT> Voucher<OUT> zip( @NonNull Voucher<A> a, @NonNull Voucher<B> b, @NonNull final BiFunction<? super A, ? super B, ? extends OUT> fn ) {
+        final Voucher<OUT> stage = newStage();
+        final AtomicReferenceArray<Object> results = new AtomicReferenceArray<>( 2 );
+        final AtomicInteger remaining = new AtomicInteger( 2 );
+        final Runnable combine = new Runnable() {
+            @Override public void run() {
+                VoucherPayload<OUT> out;
+                try {
+                    @SuppressWarnings( "unchecked" ) A first = (A) results.get( 0 );
+                    @SuppressWarnings( "unchecked" ) B second = (B) results.get( 1 );
+                    out = new VoucherPayload<OUT>( fn.apply( first, second ) );
+                } catch ( Exception e ) {
+                    out = new VoucherPayload<>( e );
+                }
+                complete( stage, out );
+            }
+        };
+        subscribeInline( a, new ZipResponse<A>( 0, results, remaining, combine, stage ) );
+        subscribeInline( b, new ZipResponse<B>( 1, results, remaining, combine, stage ) );
+        return stage;
+    }
+
+    static <IN, OUT> Voucher<OUT> map( @NonNull Voucher<IN> source, @NonNull final Function<? super IN, ? extends OUT> fn ) {
+        final Voucher<OUT> stage = newStage();
+        subscribeInline( source, new VoucherResponse<IN>() {
+            @Override public void onResult( Voucher<IN> voucher, VoucherPayload<IN> payload ) {
+                if ( payload.getError() != null ) {
+                    complete( stage, new VoucherPayload<OUT>( payload.getError() ) );
+                    return;
+                }
+                VoucherPayload<OUT> out;
+                try {
+                    out = new VoucherPayload<OUT>( fn.apply( payload.getData() ) );
+                } catch ( Exception e ) {
+                    out = new VoucherPayload<>( e );
+                }
+                complete( stage, out );
+            }
+        } );
+        return stage;
+    }
+
+    static <IN, OUT> Voucher<OUT> flatMap( @NonNull Voucher<IN> source, @NonNull final Function<? super IN, Voucher<OUT>> fn ) {
+        final Voucher<OUT> stage = newStage();
+        final VoucherResponse<OUT> forward = new VoucherResponse<OUT>() {
+            @Override public void onResult( Voucher<OUT> voucher, VoucherPayload<OUT> payload ) {
+                complete( stage, payload );
+            }
+        };
+        subscribeInline( source, new VoucherResponse<IN>() {
+            @Override public void onResult( Voucher<IN> voucher, VoucherPayload<IN> payload ) {
+                if ( payload.getError() != null ) {
+                    complete( stage, new VoucherPayload<OUT>( payload.getError() ) );
+                    return;
+                }
+                try {
+                    Voucher<OUT> next = fn.apply( payload.getData() );
+                    if ( next == null ) {
+                        throw new NullPointerException( "flatMap function returned no voucher" );
+                    }
+                    subscribeInline( next, forward );
+                } catch ( Exception e ) {
+                    complete( stage, new VoucherPayload<OUT>( e ) );
+                }
+            }
+        } );
+        return stage;
+    }
+
+    private static final class ZipResponse<DATA> implements VoucherResponse<DATA> {
+        private final int mIndex;
+        private final AtomicReferenceArray<Object> mResults;
+        private final AtomicInteger mRemaining;
+        private final Runnable mCombine;
+        private final Voucher<?> mStage;
+
+        ZipResponse( int index, AtomicReferenceArray<Object> results, AtomicInteger remaining, Runnable combine, Voucher<?> stage ) {
+            mIndex = index;
+            mResults = results;
+            mRemaining = remaining;
+            mCombine = combine;
+            mStage = stage;
+        }
+
+        @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            if ( payload.getError() != null ) {
+                if ( mRemaining.getAndSet( -1 ) > 0 ) {
+                    fail( mStage, payload.getError() );
+                }
+                return;
+            }
+            mResults.set( mIndex, payload.getData() );
+            if ( countDown( mRemaining ) ) {
+                mCombine.run();
+            }
+        }
+    }
+
+    /**
+     * @return true for the caller that took the count to zero, false once failed (negative)
+     */
+    private static boolean countDown( AtomicInteger remaining ) {
+        while ( true ) {
+            int current = remaining.get();
+            if ( current <= 0 ) {
+                return false;
+            }
+            if ( remaining.compareAndSet( current, current - 1 ) ) {
+                return current == 1;
+            }
+        }
+    }
+
+    private static <DATA> void subscribeInline( Voucher<DATA> source, VoucherResponse<DATA> response ) {
+        source.observe( response );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static <DATA> Voucher<DATA> newStage() {
+        return (Voucher<DATA>) (Voucher<?>) STAGES.newDetachedVoucher();
+    }
+
+    private static <DATA> void fail( Voucher<DATA> stage, Exception error ) {
+        complete( stage, new VoucherPayload<DATA>( error ) );
+    }
+
+    /**
+     * Straight to the stage's subscriber, the stage's own state decides if it still wants it.
+     */
+    private static <DATA> void complete( Voucher<DATA> stage, VoucherPayload<DATA> payload ) {
+        stage.notifySubscriber( payload );
+    }
+}
@@ -1,23 +1,17 @@
 package com.ath.voucher;
 
-import android.os.SystemClock;
-
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
-
 /**
- * Spins up a single thread that begins to poll at 100ms.<br>
- * The thread is created on-demand.<br>
+ * Backed by a single hashed timing wheel shared by every Watcher, see {@link WatcherWheel}.<br>
+ * The wheel's thread is created on-demand.<br>
  * The thread is kept alive only until all watchers are satisfied and then it dies.<br>
  * Only 1 thread is used, regardless of the number of watchers.<br>
+ * {@link #start()} and {@link #cancel()} are O(1) and never contend with the wheel's thread.<br>
  * <br>
- * WARN: Not supremely accurate.<br>
- * Precision will be approximately within 100ms of your requested timeout<br>
+ * WARN: Precision is one tick of the wheel, {@value WatcherWheel#DEFAULT_TICK_MILLIS}ms by default, see {@link #setTickMillis(long)}.<br>
  * <br>
- * WARN: Polling will continue even if the app is in the background as long as watchers are active.<br>
+ * WARN: Ticking will continue even if the app is in the background as long as watchers are active.<br>
  * If that is not what you want, you may want to cancel your watchers.<br>
- * Generally if you keep your timeouts reasonable, the polling will kill itself once all the watchers timeout.<br>
+ * Generally if you keep your timeouts reasonable, the ticking will kill itself once all the watchers timeout.<br>
  * HOWEVER: if you override {@link #getNowMillis()} to observe Deep Sleep, the Watchers may not timeout while in deep sleep, so be careful.<br>
  * <br>
  * Override {@link #onTimeExceeded()} to get notified when the timeout occurs.<br>
@@ -28,16 +22,30 @@ public abstract class Watcher {
 
     private long mWatchStartMillis = Long.MAX_VALUE;
     private long mDelayMillis = 0;
-    private boolean mEnabled = false;
+    private volatile boolean mEnabled = false;
+    private volatile WatcherWheel.Timeout mTimeout;
 
     public Watcher(long timeoutMillis) {
         mDelayMillis = timeoutMillis;
     }
 
+    /**
+     * Tick resolution shared by all Watchers, a Watcher fires within one tick after its timeout.<br>
+     * Smaller ticks are more accurate but wake the timer thread more often while watchers are pending.<br>
+     * Takes effect once the currently pending watchers have drained.
+     */
+    public static void setTickMillis(long tickMillis) {
+        WatcherWheel.get().setTickMillis(tickMillis);
+    }
+
+    public static long getTickMillis() {
+        return WatcherWheel.get().getTickMillis();
+    }
+
     /**
      * How the system obtains the current time in millis.<br>
      * You may override this if you wish to use another clock.<br>
-     * Recommended if you want to observe sleep mode, IE: override and return {@link SystemClock#uptimeMillis()}
+     * Recommended if you want to observe sleep mode, IE: override and return android.os.SystemClock.uptimeMillis()
      *
      * @return the current milliseconds that have passed (used for timing).
      */
@@ -55,28 +63,45 @@ public abstract class Watcher {
     }
 
     public final Watcher start() {
+        cancelTimeout();
         mWatchStartMillis = getNowMillis();
         mEnabled = true;
-        WatcherManager.get().addTask(this);
+        mTimeout = WatcherWheel.get().schedule(this, mDelayMillis);
         return this;
     }
 
     public final void cancel() {
         mEnabled = false;
-        WatcherManager.get().cancelTask(this);
+        cancelTimeout();
     }
 
     public final boolean isEnabled() {
         return mEnabled;
     }
 
+    private void cancelTimeout() {
+        WatcherWheel.Timeout timeout = mTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            mTimeout = null;
+        }
+    }
+
     /**
-     * WARN: only to be called by the poller from within the locked area
+     * WARN: only to be called by the wheel's thread.<br>
+     * The wheel runs on its own clock, if {@link #getNowMillis()} was overridden and disagrees we wait out the remainder.
      */
-    private final void notifyTimeExceeded() {
+    final void onDeadline() {
         if (isEnabled()) {
-            cancel();
-            onTimeExceeded();
+            long remaining = mDelayMillis - getElapsed();
+            if (remaining > 0) {
+                mTimeout = WatcherWheel.get().schedule(this, remaining);
+            } else {
+                mEnabled = false;
+                mTimeout = null;
+                VoucherMetrics.get().onTimeoutFired();
+                onTimeExceeded();
+            }
         }
     }
 
@@ -86,129 +111,4 @@ public abstract class Watcher {
      */
     protected abstract void onTimeExceeded();
 
-    private static final class WatcherManager {
-
-        private static final WatcherManager self = new WatcherManager();
-        private ReentrantLock mLock = new ReentrantLock();
-        private ReentrantLock mPollerLock = new ReentrantLock();
-        private ConcurrentLinkedQueue<Watcher> mWatchers = new ConcurrentLinkedQueue<>();
-        private long mPollingIntervalMillis = 100;
-        private WatcherPoller mPoller;
-
-        private WatcherManager() {
-        }
-
-        private static final WatcherManager get() {
-            return self;
-        }
-
-        private void startPolling() {
-            mPollerLock.lock();
-            Log.t("start polling got lock");
-            try {
-                if (mPoller != null) {
-                    stopPolling();
-                }
-                mPoller = new WatcherPoller();
-                Log.t("started polling");
-                mPoller.start();
-            } finally {
-                Log.t("started polling unlocking");
-                mPollerLock.unlock();
-            }
-        }
-
-        private void stopPolling() {
-            mPollerLock.lock();
-            Log.t("stop polling got lock");
-            try {
-                if (mPoller != null) {
-                    Log.t("stopped polling");
-                    mPoller.stop();
-                }
-            } finally {
-                Log.t("stopped polling unlocking");
-                mPollerLock.unlock();
-            }
-        }
-
-        void addTask(Watcher watcher) {
-            mLock.lock();
-            Log.t("addTask got the lock");
-            try {
-                Log.t("addTask got the lock - adding");
-                mWatchers.add(watcher);
-                if (mWatchers.size() == 1) {
-                    Log.t("addTask got the lock - adding - starting");
-                    startPolling();
-                }
-            } finally {
-                Log.t("addTask released the lock");
-                mLock.unlock();
-            }
-        }
-
-        void cancelTask(Watcher watcher) {
-            mLock.lock();
-            Log.t("cancelTask got the lock");
-            try {
-                Log.t("cancelTask got the lock - canceling");
-                mWatchers.remove(watcher);
-                if (mWatchers.size() == 0) {
-                    Log.t("cancelTask got the lock - canceling - stopping");
-                    stopPolling();
-                }
-            } finally {
-                Log.t("cancelTask releasing the lock");
-                mLock.unlock();
-            }
-        }
-
-        /* inner class */
-        class WatcherPoller {
-            private AtomicBoolean mRunning = new AtomicBoolean(false);
-
-            void start() {
-                if (!mRunning.getAndSet(true)) {
-                    Log.t("start polling");
-                    new Thread(new Runnable() {
-
-                        @Override
-                        public void run() {
-                            while (mRunning.get()) {
-                                mLock.lock();
-                                try {
-                                    if (mWatchers.size() == 0) {
-                                        stop();
-                                    } else {
-                                        for (Watcher watcher : mWatchers) {
-                                            if (watcher.isEnabled() && watcher.isTimeExceeded()) {
-                                                watcher.notifyTimeExceeded();
-                                            }
-                                        }
-                                    }
-                                } finally {
-                                    mLock.unlock();
-                                }
-                                try {
-                                    // in case of concurrent modification of mRunning
-                                    // no point in sleeping if we're not running
-                                    if (mRunning.get()) {
-                                        Thread.sleep(mPollingIntervalMillis);
-                                    }
-                                } catch (InterruptedException e) {
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                    }).start();
-                }
-            }
-
-            void stop() {
-                mRunning.set(false);
-            }
-        }
-    }
-
 }
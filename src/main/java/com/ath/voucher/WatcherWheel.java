@@ -0,0 +1,260 @@
+package com.ath.voucher;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * Hashed timing wheel that drives every {@link Watcher}.
+ *
+ * A single ticker thread advances one bucket per tick and only ever looks at that bucket,
+ * so scheduling and canceling are O(1) no matter how many watchers are outstanding.
+ *
+ * Producers never take a lock:
+ * - schedule() drops the timeout into a pending queue, the ticker moves it into its bucket on the next tick.
+ * - cancel() flips the timeout's state, the ticker unlinks it from its bucket on the next tick.
+ *
+ * The ticker thread is created on-demand and dies as soon as nothing is pending, so an idle wheel never wakes up.
+ * Precision is one tick, see {@link #setTickMillis(long)}.
+ * </pre>
+ */
+final class WatcherWheel {
+    static final long DEFAULT_TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 512; // must be a power of two
+
+    private static final WatcherWheel self = new WatcherWheel();
+
+    private final Bucket[] mWheel = new Bucket[WHEEL_SIZE];
+    private final int mMask = WHEEL_SIZE - 1;
+    private final Queue<Timeout> mPending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> mCancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mActive = new AtomicInteger();
+    private final AtomicBoolean mRunning = new AtomicBoolean( false );
+    private volatile long mTickMillis = DEFAULT_TICK_MILLIS;
+
+    private WatcherWheel() {
+        for ( int i = 0; i < mWheel.length; i++ ) {
+            mWheel[i] = new Bucket();
+        }
+    }
+
+    static WatcherWheel get() {
+        return self;
+    }
+
+    /**
+     * Tick resolution, a Watcher fires within one tick after its deadline.<br>
+     * Smaller ticks are more accurate but wake the ticker thread more often while watchers are pending.<br>
+     * Takes effect the next time the ticker thread starts, IE: once the currently pending watchers have drained.
+     */
+    void setTickMillis( long tickMillis ) {
+        if ( tickMillis <= 0 ) {
+            throw new IllegalArgumentException( "tickMillis must be > 0" );
+        }
+        mTickMillis = tickMillis;
+    }
+
+    long getTickMillis() {
+        return mTickMillis;
+    }
+
+    /**
+     * @return number of watchers that have neither fired nor been canceled
+     */
+    int getPendingCount() {
+        return mActive.get();
+    }
+
+    @ThreadSafe
+    Timeout schedule( Watcher watcher, long delayMillis ) {
+        Timeout timeout = new Timeout( this, watcher, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( Math.max( 0, delayMillis ) ) );
+        mActive.incrementAndGet();
+        mPending.add( timeout );
+        if ( mRunning.compareAndSet( false, true ) ) {
+            startTicker();
+        }
+        return timeout;
+    }
+
+    private void startTicker() {
+        Thread t = new Thread( new Ticker(), "VoucherWatcher" );
+        t.setDaemon( true );
+        t.start();
+    }
+
+    /**
+     * One per {@link Watcher#start()}.<br>
+     * The bucket links are only ever touched by the ticker thread that holds mRunning.
+     */
+    static final class Timeout {
+        private static final int ST_PENDING = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final WatcherWheel mWheel;
+        private final Watcher mWatcher;
+        private final long mDeadlineNanos;
+        private final AtomicInteger mState = new AtomicInteger( ST_PENDING );
+        private long mRemainingRounds;
+        private Bucket mBucket;
+        private Timeout mNext;
+        private Timeout mPrev;
+
+        private Timeout( WatcherWheel wheel, Watcher watcher, long deadlineNanos ) {
+            mWheel = wheel;
+            mWatcher = watcher;
+            mDeadlineNanos = deadlineNanos;
+        }
+
+        @ThreadSafe
+        boolean cancel() {
+            if ( mState.compareAndSet( ST_PENDING, ST_CANCELLED ) ) {
+                mWheel.mActive.decrementAndGet();
+                mWheel.mCancelled.add( this );
+                return true;
+            }
+            return false;
+        }
+
+        boolean isCancelled() {
+            return mState.get() == ST_CANCELLED;
+        }
+
+        private void expire() {
+            if ( mState.compareAndSet( ST_PENDING, ST_EXPIRED ) ) {
+                mWheel.mActive.decrementAndGet();
+                try {
+                    mWatcher.onDeadline();
+                } catch ( Exception e ) {
+                    Log.e( e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubly linked so a canceled {@link Timeout} can be unlinked in O(1).
+     */
+    private static final class Bucket {
+        private Timeout mHead;
+        private Timeout mTail;
+
+        void add( Timeout timeout ) {
+            timeout.mBucket = this;
+            if ( mHead == null ) {
+                mHead = mTail = timeout;
+            } else {
+                mTail.mNext = timeout;
+                timeout.mPrev = mTail;
+                mTail = timeout;
+            }
+        }
+
+        void remove( Timeout timeout ) {
+            Timeout next = timeout.mNext;
+            if ( timeout.mPrev != null ) {
+                timeout.mPrev.mNext = next;
+            }
+            if ( timeout.mNext != null ) {
+                timeout.mNext.mPrev = timeout.mPrev;
+            }
+            if ( timeout == mHead ) {
+                mHead = next;
+            }
+            if ( timeout == mTail ) {
+                mTail = timeout.mPrev;
+            }
+            timeout.mPrev = null;
+            timeout.mNext = null;
+            timeout.mBucket = null;
+        }
+
+        void expire() {
+            Timeout timeout = mHead;
+            while ( timeout != null ) {
+                Timeout next = timeout.mNext;
+                if ( timeout.mRemainingRounds <= 0 ) {
+                    remove( timeout );
+                    timeout.expire();
+                } else if ( timeout.isCancelled() ) {
+                    remove( timeout );
+                } else {
+                    timeout.mRemainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /* inner class */
+    private final class Ticker implements Runnable {
+        private long mStartNanos;
+        private long mTickNanos;
+        private long mTick;
+
+        @Override public void run() {
+            mStartNanos = System.nanoTime();
+            mTickNanos = TimeUnit.MILLISECONDS.toNanos( mTickMillis );
+            mTick = 0;
+
+            while ( true ) {
+                waitForNextTick();
+                processCancelled();
+                transferPending();
+                mWheel[(int) ( mTick & mMask )].expire();
+                mTick++;
+
+                if ( mActive.get() == 0 ) {
+                    // unlink while we still own the buckets, a cancel() after this is left queued for the next ticker
+                    processCancelled();
+                    mRunning.set( false );
+                    // a schedule() may have slipped in after we looked, reclaim the ticker or let its own thread have it.
+                    // Once released the buckets belong to whichever ticker starts next, don't touch them again.
+                    if ( mActive.get() == 0 || !mRunning.compareAndSet( false, true ) ) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void waitForNextTick() {
+            long deadline = mStartNanos + mTickNanos * ( mTick + 1 );
+            while ( true ) {
+                long sleepNanos = deadline - System.nanoTime();
+                if ( sleepNanos <= 0 ) {
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep( sleepNanos );
+                } catch ( InterruptedException e ) {
+                    // not ours to give up on, the pending watchers still need to fire
+                }
+            }
+        }
+
+        private void transferPending() {
+            Timeout timeout;
+            while ( ( timeout = mPending.poll() ) != null ) {
+                if ( timeout.isCancelled() ) {
+                    continue;
+                }
+                long calculated = ( timeout.mDeadlineNanos - mStartNanos + mTickNanos - 1 ) / mTickNanos;
+                long ticks = Math.max( calculated, mTick );
+                timeout.mRemainingRounds = ( ticks - mTick ) / mWheel.length;
+                mWheel[(int) ( ticks & mMask )].add( timeout );
+            }
+        }
+
+        private void processCancelled() {
+            Timeout timeout;
+            while ( ( timeout = mCancelled.poll() ) != null ) {
+                if ( timeout.mBucket != null ) {
+                    timeout.mBucket.remove( timeout );
+                }
+            }
+        }
+    }
+}
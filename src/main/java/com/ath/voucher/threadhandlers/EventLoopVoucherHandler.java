@@ -0,0 +1,39 @@
+package com.ath.voucher.threadhandlers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The main handler off Android, callbacks run one at a time on a single daemon thread, "VoucherMain".
+ */
+final class EventLoopVoucherHandler extends VoucherHandler {
+    private volatile Thread mThread;
+
+    private EventLoopVoucherHandler( ThreadCapture capture ) {
+        super( Executors.newSingleThreadExecutor( capture ), false );
+        capture.mHandler = this;
+    }
+
+    EventLoopVoucherHandler() {
+        this( new ThreadCapture() );
+    }
+
+    @Override public boolean isCurrentThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    /**
+     * Remembers the loop thread, created lazily by the {@link ExecutorService} on first use.
+     */
+    private static final class ThreadCapture implements ThreadFactory {
+        private EventLoopVoucherHandler mHandler;
+
+        @Override public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "VoucherMain" );
+            t.setDaemon( true );
+            mHandler.mThread = t;
+            return t;
+        }
+    }
+}
@@ -1,28 +1,18 @@
 package com.ath.voucher.threadhandlers;
 
-import android.os.Looper;
-
-import com.ath.voucher.Voucher;
-import com.ath.voucher.Voucher.VoucherResponse;
-import com.ath.voucher.VoucherPayload;
-
 class RecycledWorkerVoucherHandler extends WorkerVoucherHandler {
-    RecycledWorkerVoucherHandler( boolean worker ) {
-        super( worker );
-    }
-
-    RecycledWorkerVoucherHandler( Looper looper ) {
-        super( looper );
+    RecycledWorkerVoucherHandler( WorkerPool pool ) {
+        super( pool );
     }
 
     @Override
-    public <DATA> void sendMessage( final Voucher<DATA> voucher, final VoucherPayload<DATA> payload, final VoucherResponse<DATA> response ) {
-        boolean isMainThread = Looper.getMainLooper().getThread().getId() == Thread.currentThread().getId();
+    void dispatch( Runnable run ) {
+        boolean isMainThread = VoucherHandlers.getMainHandler().isCurrentThread();
         if ( isMainThread ) {
-            super.sendMessage( voucher, payload, response );
+            super.dispatch( run );
         } else {
             try {
-                response.onResult( voucher, payload );
+                run.run();
             } catch ( Exception e ) {
                 e.printStackTrace(); // FIXME: provide a way to deliver this error - general error handler?
             }
@@ -0,0 +1,36 @@
+package com.ath.voucher.threadhandlers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Looks up the JVM's virtual thread-per-task executor (Java 21+) without linking against it,
+ * so the same build runs on older JVMs and Android where virtual threads do not exist.
+ */
+final class VirtualThreads {
+    private static final Executor EXECUTOR = find();
+
+    private VirtualThreads() {
+    }
+
+    private static Executor find() {
+        try {
+            Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            return (Executor) factory.invoke( null );
+        } catch ( Exception e ) {
+            return null; // not available on this runtime
+        }
+    }
+
+    static boolean isSupported() {
+        return EXECUTOR != null;
+    }
+
+    /**
+     * @return the virtual thread-per-task executor, or fallback when virtual threads are unavailable
+     */
+    static Executor executorOr( Executor fallback ) {
+        return EXECUTOR != null ? EXECUTOR : fallback;
+    }
+}
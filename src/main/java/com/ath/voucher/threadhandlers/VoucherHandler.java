@@ -1,26 +1,40 @@
 package com.ath.voucher.threadhandlers;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.support.annotation.NonNull;
 
 import com.ath.voucher.Voucher;
 import com.ath.voucher.Voucher.VoucherResponse;
+import com.ath.voucher.VoucherMetrics;
 import com.ath.voucher.VoucherPayload;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where a {@link Voucher}'s callback runs.<br>
+ * Platform neutral, a handler is nothing more than the {@link Executor} it hands callbacks to.<br>
+ * Platforms with a main thread of their own plug it in with {@link VoucherHandlers#setMainHandler(VoucherHandler)}.
+ */
 public class VoucherHandler {
-    private Handler mHandler;
-    private boolean mWorker;
+    private final Executor mExecutor;
+    private final boolean mWorker;
+    private String mName = getClass().getSimpleName();
+    private final AtomicInteger mQueued = new AtomicInteger(); // only tracked while metrics are enabled
 
-    VoucherHandler( boolean worker ) {
-        this.mWorker = worker;
+    /**
+     * @param executor runs the callbacks, IE: an event loop's single thread
+     */
+    public VoucherHandler( @NonNull Executor executor ) {
+        this( executor, false );
     }
 
-    VoucherHandler( Looper looper ) {
-        mHandler = new Handler( looper );
+    VoucherHandler( Executor executor, boolean worker ) {
+        mExecutor = executor;
+        mWorker = worker;
     }
 
     public <DATA> void sendMessage( final Voucher<DATA> voucher, final VoucherPayload<DATA> payload, final VoucherResponse<DATA> response ) {
-        mHandler.post( new Runnable() {
+        post( new Runnable() {
             @Override public void run() {
                 try {
                     response.onResult( voucher, payload );
@@ -31,7 +45,59 @@ public class VoucherHandler {
         } );
     }
 
+    /**
+     * Run the given work on this handler's thread.<br>
+     * Lets a caller with many deliveries for this handler hand them over in one go instead of one {@link #sendMessage} each.
+     */
+    public final void post( final Runnable run ) {
+        if ( !VoucherMetrics.isEnabled() ) {
+            dispatch( run );
+            return;
+        }
+        VoucherMetrics.get().onHandlerQueued( this, mQueued.incrementAndGet() );
+        dispatch( new Runnable() {
+            @Override public void run() {
+                mQueued.decrementAndGet();
+                run.run();
+            }
+        } );
+    }
+
+    /**
+     * Hand the work to this handler's thread, override to change where that is.
+     */
+    void dispatch( Runnable run ) {
+        mExecutor.execute( run );
+    }
+
+    /**
+     * @return true when called on the thread this handler delivers on.<br>
+     * Only meaningful for single threaded handlers, override when you know, defaults to false.
+     */
+    public boolean isCurrentThread() {
+        return false;
+    }
+
+    /**
+     * Identifies this handler in {@link VoucherMetrics}.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    public VoucherHandler setName( @NonNull String name ) {
+        mName = name;
+        return this;
+    }
+
+    /**
+     * @return work posted but not yet started, only tracked while {@link VoucherMetrics#isEnabled()}
+     */
+    public int getQueueDepth() {
+        return mQueued.get();
+    }
+
     boolean isWorker() {
         return mWorker;
     }
-}
\ No newline at end of file
+}
@@ -1,15 +1,34 @@
 package com.ath.voucher.threadhandlers;
 
-import static android.os.Looper.getMainLooper;
+import android.support.annotation.NonNull;
 
 public class VoucherHandlers {
 
-    private static final VoucherHandler MAIN_HANDLER = new VoucherHandler( getMainLooper() );
-    private static final VoucherHandler WORKER_NEW_HANDLER = new WorkerVoucherHandler( true );
-    private static final VoucherHandler WORKER_RECYCLED_HANDLER = new RecycledWorkerVoucherHandler( true );
+    /**
+     * Provided by the Android add-on, when present it supplies the Looper backed main handler.
+     */
+    private static final String ANDROID_MAIN_HANDLER = "com.ath.voucher.android.LooperVoucherHandler";
 
+    private static final WorkerPool WORKER_POOL = new WorkerPool();
+    private static volatile VoucherHandler sMainHandler = findMainHandler();
+    private static final VoucherHandler WORKER_NEW_HANDLER = new WorkerVoucherHandler( WORKER_POOL ).setName( "worker" );
+    private static final VoucherHandler WORKER_RECYCLED_HANDLER = new RecycledWorkerVoucherHandler( WORKER_POOL ).setName( "worker-recycled" );
+    private static final VoucherHandler WORKER_VIRTUAL_HANDLER = new WorkerVoucherHandler( VirtualThreads.executorOr( WORKER_POOL ) ).setName( "worker-virtual" );
+
+    /**
+     * On Android (with the add-on) this is the main Looper.<br>
+     * Elsewhere it is a single daemon thread unless replaced with {@link #setMainHandler(VoucherHandler)}.
+     */
     public static VoucherHandler getMainHandler() {
-        return MAIN_HANDLER;
+        return sMainHandler;
+    }
+
+    /**
+     * Route main thread callbacks to your own loop, IE: a server's event loop or a UI toolkit's dispatch thread.<br>
+     * Vouchers already bound to the previous main handler keep it.
+     */
+    public static void setMainHandler( @NonNull VoucherHandler handler ) {
+        sMainHandler = handler;
     }
 
     public static VoucherHandler getWorkerNewHandler() {
@@ -20,4 +39,33 @@ public class VoucherHandlers {
         return WORKER_RECYCLED_HANDLER;
     }
 
-}
+    /**
+     * Each callback runs on its own virtual thread, so blocking subscribers don't tie up platform threads.<br>
+     * Where virtual threads are unavailable (Android, JVMs before 21) this behaves exactly like {@link #getWorkerNewHandler()}.
+     */
+    public static VoucherHandler getWorkerVirtualHandler() {
+        return WORKER_VIRTUAL_HANDLER;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * The pool shared by the worker handlers, size it with {@link WorkerPool#configure(int, int)} and watch its queue depth.
+     */
+    public static WorkerPool getWorkerPool() {
+        return WORKER_POOL;
+    }
+
+    private static VoucherHandler findMainHandler() {
+        try {
+            Class<?> android = Class.forName( ANDROID_MAIN_HANDLER );
+            return (VoucherHandler) android.getMethod( "attain" ).invoke( null );
+        } catch ( Exception e ) {
+            // not on Android, or the add-on is not on the classpath
+            return new EventLoopVoucherHandler().setName( "main" );
+        }
+    }
+
+}
\ No newline at end of file
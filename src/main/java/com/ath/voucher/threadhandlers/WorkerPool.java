@@ -0,0 +1,180 @@
+package com.ath.voucher.threadhandlers;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ * Bounded pool of background threads shared by the worker {@link VoucherHandler}s.
+ * Callbacks are always delivered on one of these threads, never on the thread that produced the payload.
+ *
+ * Backpressure:
+ * Deliveries queue up to {@link #getQueueCapacity()} deep.
+ * When the queue is full the delivery goes to a single overflow thread with a queue of the same capacity,
+ * so a burst is absorbed without dropping a callback and without a thread per delivery.
+ * Only when the overflow queue is full too does the producer block until it has room, real backpressure.
+ * A producer that is itself one of the pool's threads can't wait on its own pool, it gets a RejectedExecutionException.
+ * Each overflow is counted, see {@link #getOverflowCount()}, if it keeps climbing give the pool more room.
+ *
+ * Idle pool threads die off after {@value #KEEP_ALIVE_SECONDS} seconds.
+ * </pre>
+ */
+public final class WorkerPool implements Executor {
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int DEFAULT_THREADS = Math.max( 2, CPU_COUNT );
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private final AtomicLong mOverflowCount = new AtomicLong();
+    private final AtomicInteger mThreadIds = new AtomicInteger();
+    private volatile ThreadPoolExecutor mExecutor;
+    private volatile ThreadPoolExecutor mOverflowExecutor;
+    private int mQueueCapacity;
+
+    WorkerPool() {
+        configure( DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY );
+    }
+
+    /**
+     * Resize the pool.<br>
+     * Deliveries already queued on the previous pool still run, new deliveries go to the new pool.
+     *
+     * @param threads       max threads delivering callbacks concurrently
+     * @param queueCapacity max deliveries waiting for a thread before overflowing, see {@link WorkerPool}
+     */
+    public synchronized void configure( int threads, int queueCapacity ) {
+        if ( threads < 1 || queueCapacity < 1 ) {
+            throw new IllegalArgumentException( "threads and queueCapacity must be > 0" );
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>( queueCapacity ),
+                mThreadFactory,
+                mOverflow
+        );
+        executor.allowCoreThreadTimeOut( true );
+        ThreadPoolExecutor overflow = new ThreadPoolExecutor(
+                1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>( queueCapacity ),
+                mOverflowThreadFactory,
+                mOverflowFull
+        );
+        overflow.allowCoreThreadTimeOut( true );
+
+        ThreadPoolExecutor old = mExecutor;
+        ThreadPoolExecutor oldOverflow = mOverflowExecutor;
+        mOverflowExecutor = overflow;
+        mExecutor = executor;
+        mQueueCapacity = queueCapacity;
+        if ( old != null ) {
+            old.shutdown(); // a post that still raced onto it is rejected and rerouted, see mOverflow
+            oldOverflow.shutdown();
+        }
+    }
+
+    @Override public void execute( Runnable run ) {
+        mExecutor.execute( run );
+    }
+
+    public int getThreadCount() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    public synchronized int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+
+    /**
+     * @return deliveries waiting for a thread, the overflow queue included
+     */
+    public int getQueueDepth() {
+        return mExecutor.getQueue().size() + mOverflowExecutor.getQueue().size();
+    }
+
+    /**
+     * @return threads currently running a callback
+     */
+    public int getActiveCount() {
+        return mExecutor.getActiveCount();
+    }
+
+    /**
+     * @return deliveries that found the queue full and went to the overflow thread, waiting for room there if need be
+     */
+    public long getOverflowCount() {
+        return mOverflowCount.get();
+    }
+
+    private final ThreadFactory mThreadFactory = new ThreadFactory() {
+        @Override public Thread newThread( Runnable r ) {
+            Thread t = new PoolThread( r, "VoucherWorker-" + mThreadIds.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+    };
+
+    private final ThreadFactory mOverflowThreadFactory = new ThreadFactory() {
+        @Override public Thread newThread( Runnable r ) {
+            Thread t = new PoolThread( r, "VoucherWorker-overflow" );
+            t.setDaemon( true );
+            return t;
+        }
+    };
+
+    private final RejectedExecutionHandler mOverflow = new RejectedExecutionHandler() {
+        @Override public void rejectedExecution( Runnable r, ThreadPoolExecutor executor ) {
+            if ( executor.isShutdown() ) {
+                // Posted to a pool that configure() has since replaced, it isn't full, it's retired
+                ThreadPoolExecutor current = mExecutor;
+                if ( current != executor ) {
+                    current.execute( r );
+                    return;
+                }
+            }
+            mOverflowCount.incrementAndGet();
+            mOverflowExecutor.execute( r );
+        }
+    };
+
+    private final RejectedExecutionHandler mOverflowFull = new RejectedExecutionHandler() {
+        @Override public void rejectedExecution( Runnable r, ThreadPoolExecutor executor ) {
+            ThreadPoolExecutor current = mOverflowExecutor;
+            if ( executor.isShutdown() && current != executor ) {
+                current.execute( r ); // retired by configure(), same as above
+                return;
+            }
+            if ( Thread.currentThread() instanceof PoolThread ) {
+                throw new RejectedExecutionException( "Worker pool and its overflow are full, a pool thread can't wait on its own pool" );
+            }
+            try {
+                executor.getQueue().put( r ); // both queues full, the producer waits for room, never runs it itself
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException( "Interrupted waiting for room in the worker pool", e );
+            }
+            executor.prestartCoreThread(); // its one thread may have idled out while we waited, even a retired pool drains its queue
+        }
+    };
+
+    /**
+     * Tells our own threads apart, they must never block waiting for room in the pool they are draining.
+     */
+    private static final class PoolThread extends Thread {
+        PoolThread( Runnable r, String name ) {
+            super( r, name );
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class AwaitTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<Integer> manager() {
+        return VoucherManager.attain();
+    }
+
+    private static final class Holder implements Voucher.VoucherResponse<Integer> {
+        final CountDownLatch mDelivered = new CountDownLatch( 1 );
+        volatile VoucherPayload<Integer> mPayload;
+
+        @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+            mPayload = payload;
+            mDelivered.countDown();
+        }
+    }
+
+    private static Thread later( final long millis, final Runnable run ) {
+        Thread thread = new Thread( new Runnable() {
+            @Override public void run() {
+                try {
+                    Thread.sleep( millis );
+                } catch ( InterruptedException e ) {
+                    return;
+                }
+                run.run();
+            }
+        } );
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void cachedPayloadReturnsWithoutParking() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        vm.notifyVouchers( "a", new VoucherPayload<>( 1 ) );
+        VoucherPayload<Integer> payload = vm.newVoucher( "a" ).await( 0, TimeUnit.MILLISECONDS );
+        Assert.assertEquals( Integer.valueOf( 1 ), payload.getData() );
+    }
+
+    @Test
+    public void wakesWhenNotifiedAndSubscriberStillGetsIt() throws Exception {
+        final VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        Holder holder = new Holder();
+        voucher.subscribe( holder );
+        later( 50, new Runnable() {
+            @Override public void run() {
+                vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 2 ) );
+            }
+        } );
+        Assert.assertEquals( Integer.valueOf( 2 ), voucher.await( 5, TimeUnit.SECONDS ).getData() );
+        Assert.assertTrue( holder.mDelivered.await( 5, TimeUnit.SECONDS ) ); // observers go first, the subscriber right after
+        Assert.assertEquals( Integer.valueOf( 2 ), holder.mPayload.getData() );
+        Assert.assertEquals( Integer.valueOf( 2 ), voucher.await( 0, TimeUnit.MILLISECONDS ).getData() ); // settled, no wait
+    }
+
+    @Test
+    public void timeoutLeavesTheVoucherRegisteredAndSubscribed() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        Holder holder = new Holder();
+        voucher.subscribe( holder );
+        VoucherPayload<Integer> payload = voucher.await( 20, TimeUnit.MILLISECONDS );
+        Assert.assertTrue( payload.getError() instanceof TimeoutException );
+        Assert.assertTrue( voucher.isRegistered() );
+        Assert.assertNull( holder.mPayload );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 3 ) );
+        Assert.assertEquals( Integer.valueOf( 3 ), holder.mPayload.getData() );
+    }
+
+    @Test
+    public void interimPayloadIsNotReturned() throws Exception {
+        final VoucherManager<Integer> vm = manager();
+        final Voucher<Integer> voucher = vm.newVoucher( "a" );
+        Holder holder = new Holder();
+        voucher.subscribe( holder );
+        later( 30, new Runnable() {
+            @Override public void run() {
+                voucher.notifyInterim( new VoucherPayload<>( 1 ).asStale() );
+            }
+        } );
+        later( 80, new Runnable() {
+            @Override public void run() {
+                vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 2 ) );
+            }
+        } );
+        VoucherPayload<Integer> payload = voucher.await( 5, TimeUnit.SECONDS );
+        Assert.assertEquals( Integer.valueOf( 2 ), payload.getData() );
+        Assert.assertFalse( payload.isStale() );
+    }
+
+    @Test
+    public void interruptThrowsAndKeepsTheRegistration() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> voucher = vm.newVoucher( "a" );
+        Thread.currentThread().interrupt();
+        try {
+            voucher.await( 5, TimeUnit.SECONDS );
+            Assert.fail( "expected an interrupt" );
+        } catch ( InterruptedException e ) {
+            Assert.assertFalse( Thread.currentThread().isInterrupted() );
+        }
+        Assert.assertTrue( voucher.isRegistered() );
+    }
+
+    @Test
+    public void unregisterWakesTheWaiter() throws Exception {
+        VoucherManager<Integer> vm = manager();
+        final Voucher<Integer> voucher = vm.newVoucher( "a" );
+        later( 30, new Runnable() {
+            @Override public void run() {
+                voucher.unregister();
+            }
+        } );
+        VoucherPayload<Integer> payload = voucher.await( 5, TimeUnit.SECONDS );
+        Assert.assertTrue( payload.getError() instanceof VoucherCancelledException );
+    }
+}
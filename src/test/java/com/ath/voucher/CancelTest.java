@@ -0,0 +1,149 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancelTest {
+    private final CountDownLatch mStarted = new CountDownLatch( 1 );
+    private final CountDownLatch mInterrupted = new CountDownLatch( 1 );
+    private final AtomicInteger mRuns = new AtomicInteger();
+    private final CountDownLatch mRelease = new CountDownLatch( 1 );
+
+    /**
+     * Blocks until released, counts an interrupt.
+     */
+    private final VoucherWorker.WorkerTask<String, String> mBlocking = new VoucherWorker.WorkerTask<String, String>() {
+        @Override public String doInBackground( String input ) throws Exception {
+            mRuns.incrementAndGet();
+            mStarted.countDown();
+            try {
+                mRelease.await( 5, TimeUnit.SECONDS );
+            } catch ( InterruptedException e ) {
+                mInterrupted.countDown();
+                throw e;
+            }
+            return input;
+        }
+    };
+
+    private static VoucherWorker oneAtATime() {
+        return new VoucherWorker() {
+            @Override protected int initConcurrency() {
+                return 1;
+            }
+        };
+    }
+
+    @Test
+    public void cancellingQueuedWorkTakesItOutOfItsLane() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> running = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        Voucher<String> queued = worker.enqueueVoucher( "b", "b", mBlocking );
+        Assert.assertEquals( 1, worker.getQueued() );
+        queued.cancel();
+        Assert.assertEquals( 0, worker.getQueued() );
+        Assert.assertTrue( queued.await( 1, TimeUnit.SECONDS ).getError() instanceof VoucherCancelledException );
+        mRelease.countDown();
+        Assert.assertEquals( "a", running.await( 5, TimeUnit.SECONDS ).getData() );
+        Assert.assertEquals( 1, mRuns.get() );
+    }
+
+    @Test
+    public void cancellingRunningWorkInterruptsItAndReleasesTheKey() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> voucher = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        voucher.cancel();
+        Assert.assertTrue( voucher.await( 1, TimeUnit.SECONDS ).getError() instanceof VoucherCancelledException );
+        Assert.assertTrue( mInterrupted.await( 5, TimeUnit.SECONDS ) );
+
+        Voucher<String> again = worker.enqueueVoucher( "a", "a2", new VoucherWorker.WorkerTask<String, String>() {
+            @Override public String doInBackground( String input ) {
+                return input;
+            }
+        } );
+        Assert.assertEquals( "a2", again.await( 5, TimeUnit.SECONDS ).getData() ); // a new run, not the cancelled one
+    }
+
+    @Test
+    public void unregisteringTheLastVoucherAbandonsTheWork() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> voucher = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        voucher.unregister();
+        Assert.assertTrue( mInterrupted.await( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void anotherVoucherOnTheKeyKeepsTheWorkAlive() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> first = worker.enqueueVoucher( "a", "a", mBlocking );
+        Voucher<String> second = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        first.unregister();
+        mRelease.countDown();
+        Assert.assertEquals( "a", second.await( 5, TimeUnit.SECONDS ).getData() );
+        Assert.assertEquals( 1, mInterrupted.getCount() );
+    }
+
+    @Test
+    public void timeoutOfTheLastVoucherCancelsTheWork() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> voucher = worker.enqueueVoucher( "a", "a", mBlocking ).setTimeout( 50 );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue( voucher.await( 5, TimeUnit.SECONDS ).getError() instanceof TimeoutException );
+        Assert.assertTrue( mInterrupted.await( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void timeoutWithOtherVouchersWaitingKeepsTheWork() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> timedOut = worker.enqueueVoucher( "a", "a", mBlocking ).setTimeout( 20 );
+        Voucher<String> waiting = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( timedOut.await( 5, TimeUnit.SECONDS ).getError() instanceof TimeoutException );
+        mRelease.countDown();
+        Assert.assertEquals( "a", waiting.await( 5, TimeUnit.SECONDS ).getData() );
+        Assert.assertEquals( 1, mInterrupted.getCount() );
+        Assert.assertEquals( 1, mRuns.get() );
+    }
+
+    @Test
+    public void givingUpOnAwaitKeepsTheWork() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        Voucher<String> voucher = worker.enqueueVoucher( "a", "a", mBlocking );
+        Assert.assertTrue( voucher.await( 20, TimeUnit.MILLISECONDS ).getError() instanceof TimeoutException );
+        mRelease.countDown();
+        Assert.assertEquals( "a", voucher.await( 5, TimeUnit.SECONDS ).getData() ); // still registered, still running
+        Assert.assertEquals( 1, mInterrupted.getCount() );
+        Assert.assertEquals( 1, mRuns.get() );
+    }
+
+    @Test
+    public void longRunningWorkCanPollForCancellation() throws Exception {
+        VoucherWorker worker = oneAtATime();
+        final CountDownLatch sawCancel = new CountDownLatch( 1 );
+        Voucher<String> voucher = worker.enqueueVoucher( "a", "a", new VoucherWorker.WorkerTask<String, String>() {
+            @Override public String doInBackground( String input ) {
+                mStarted.countDown();
+                long end = System.currentTimeMillis() + 5000;
+                while ( System.currentTimeMillis() < end ) {
+                    if ( VoucherWorker.isCancelled() ) {
+                        sawCancel.countDown();
+                        return null;
+                    }
+                }
+                return input;
+            }
+        } );
+        Assert.assertTrue( mStarted.await( 5, TimeUnit.SECONDS ) );
+        voucher.unregister();
+        Assert.assertTrue( sawCancel.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertFalse( VoucherWorker.isCancelled() ); // only inside a task
+    }
+}
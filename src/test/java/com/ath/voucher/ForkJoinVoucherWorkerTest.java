@@ -0,0 +1,92 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ForkJoinVoucherWorkerTest {
+
+    private static ForkJoinVoucherWorker twoThreads() {
+        ForkJoinVoucherWorker worker = new ForkJoinVoucherWorker() {
+            @Override protected int initParallelism() {
+                return 2;
+            }
+        };
+        worker.setQueueCapacity( 1000, VoucherWorker.Overflow.FAIL_FAST );
+        return worker;
+    }
+
+    private static final VoucherWorker.WorkerTask<Integer, Integer> LEAF = new VoucherWorker.WorkerTask<Integer, Integer>() {
+        @Override public Integer doInBackground( Integer input ) {
+            return input;
+        }
+    };
+
+    /**
+     * Every page blocks on its children, on a plain two thread worker the pages alone would take every thread.
+     */
+    @Test
+    public void parentsJoiningChildrenNeverStarveThePool() throws Exception {
+        final ForkJoinVoucherWorker worker = twoThreads();
+        VoucherWorker.WorkerTask<Integer, Integer> page = new VoucherWorker.WorkerTask<Integer, Integer>() {
+            @Override public Integer doInBackground( Integer input ) throws Exception {
+                List<Voucher<Integer>> children = new ArrayList<>();
+                for ( int i = 0; i < 10; i++ ) {
+                    children.add( worker.fork( null, i, LEAF ) );
+                }
+                int sum = 0;
+                for ( Voucher<Integer> child : children ) {
+                    VoucherPayload<Integer> payload = worker.join( child, 5, TimeUnit.SECONDS );
+                    if ( payload.getError() != null ) {
+                        throw payload.getError();
+                    }
+                    sum += payload.getData();
+                }
+                return sum;
+            }
+        };
+        List<Voucher<Integer>> pages = new ArrayList<>();
+        for ( int i = 0; i < 50; i++ ) {
+            pages.add( worker.enqueueVoucher( null, i, page ) );
+        }
+        for ( Voucher<Integer> voucher : pages ) {
+            VoucherPayload<Integer> payload = voucher.await( 10, TimeUnit.SECONDS );
+            Assert.assertNull( payload.getError() );
+            Assert.assertEquals( Integer.valueOf( 45 ), payload.getData() );
+        }
+    }
+
+    @Test
+    public void forksForOneKeyShareOneRun() throws Exception {
+        final ForkJoinVoucherWorker worker = twoThreads();
+        final AtomicInteger runs = new AtomicInteger();
+        final VoucherWorker.WorkerTask<Integer, Integer> child = new VoucherWorker.WorkerTask<Integer, Integer>() {
+            @Override public Integer doInBackground( Integer input ) throws Exception {
+                runs.incrementAndGet();
+                Thread.sleep( 20 );
+                return input;
+            }
+        };
+        VoucherWorker.WorkerTask<Integer, Integer> parent = new VoucherWorker.WorkerTask<Integer, Integer>() {
+            @Override public Integer doInBackground( Integer input ) throws Exception {
+                Voucher<Integer> first = worker.fork( "child", 7, child );
+                Voucher<Integer> second = worker.fork( "child", 7, child ); // deduped onto the first
+                return worker.join( first ).getData() + worker.join( second ).getData();
+            }
+        };
+        VoucherPayload<Integer> payload = worker.enqueueVoucher( null, 0, parent ).await( 10, TimeUnit.SECONDS );
+        Assert.assertEquals( Integer.valueOf( 14 ), payload.getData() );
+        Assert.assertEquals( 1, runs.get() );
+    }
+
+    @Test
+    public void joinOffThePoolJustWaits() throws Exception {
+        ForkJoinVoucherWorker worker = twoThreads();
+        Voucher<Integer> voucher = worker.fork( null, 3, LEAF ); // queued as interactive from outside the pool
+        Assert.assertEquals( Integer.valueOf( 3 ), worker.join( voucher, 10, TimeUnit.SECONDS ).getData() );
+    }
+}
@@ -0,0 +1,121 @@
+package com.ath.voucher;
+
+import com.ath.voucher.threadhandlers.VoucherHandlers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class InMemoryVoucherMetricsTest {
+
+    @Test
+    public void histogramReportsBucketUpperBoundsClampedToMax() {
+        InMemoryVoucherMetrics.Histogram histogram = new InMemoryVoucherMetrics.Histogram();
+        Assert.assertEquals( 0, histogram.getPercentile( 50 ) );
+
+        for ( long value : new long[] { 0, 1, 2, 3, 4, 1000 } ) {
+            histogram.record( value );
+        }
+        histogram.record( -5 ); // counted as zero
+        Assert.assertEquals( 7, histogram.getCount() );
+        Assert.assertEquals( 1010, histogram.getSum() );
+        Assert.assertEquals( 1000, histogram.getMax() );
+
+        // buckets: [0,1] holds 3, [2,3] holds 2, [4,7] holds 1, [512,1023] holds 1
+        Assert.assertEquals( 1, histogram.getPercentile( 40 ) );
+        Assert.assertEquals( 3, histogram.getPercentile( 50 ) );
+        Assert.assertEquals( 7, histogram.getPercentile( 80 ) );
+        Assert.assertEquals( 1000, histogram.getPercentile( 99 ) );
+        Assert.assertEquals( 1000, histogram.getPercentile( 100 ) );
+    }
+
+    @Test
+    public void outstandingKeysAreDroppedOnceTheyReachZero() {
+        InMemoryVoucherMetrics metrics = new InMemoryVoucherMetrics();
+        metrics.onVoucherRegistered( "a" );
+        metrics.onVoucherRegistered( "a" );
+        metrics.onVoucherRegistered( "b" );
+        metrics.onVoucherUnregistered( "a" );
+        Assert.assertEquals( Integer.valueOf( 1 ), metrics.getOutstandingVouchers().get( "a" ) );
+        Assert.assertEquals( Integer.valueOf( 1 ), metrics.getOutstandingVouchers().get( "b" ) );
+
+        metrics.onVoucherUnregistered( "b" );
+        metrics.onVoucherUnregistered( "b" ); // more unregisters than registers stay at zero
+        metrics.onVoucherUnregistered( "never" );
+        Assert.assertEquals( Collections.singletonMap( "a", 1 ), metrics.getOutstandingVouchers() );
+
+        metrics.onVoucherRegistered( "b" );
+        Assert.assertEquals( Integer.valueOf( 1 ), metrics.getOutstandingVouchers().get( "b" ) );
+    }
+
+    @Test
+    public void registerRacingTheRetiringUnregisterIsNotLost() throws InterruptedException {
+        final InMemoryVoucherMetrics metrics = new InMemoryVoucherMetrics();
+        final int threads = 4;
+        final int rounds = 20000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ ) {
+            new Thread( new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        for ( int i = 0; i < rounds; i++ ) {
+                            // every pair takes the key through zero, so registers keep landing on retired counts
+                            metrics.onVoucherRegistered( "key" );
+                            metrics.onVoucherUnregistered( "key" );
+                        }
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            } ).start();
+        }
+        start.countDown();
+        Assert.assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+
+        Assert.assertTrue( metrics.getOutstandingVouchers().isEmpty() );
+        metrics.onVoucherRegistered( "key" );
+        Assert.assertEquals( Collections.singletonMap( "key", 1 ), metrics.getOutstandingVouchers() );
+    }
+
+    @Test
+    public void scrapeWritesOneLinePerMetric() {
+        InMemoryVoucherMetrics metrics = new InMemoryVoucherMetrics();
+        metrics.onNotify( "a", 3 );
+        metrics.onTimeoutFired();
+        metrics.onPayloadCacheLookup( "a", true );
+        metrics.onPayloadCacheLookup( "a", false );
+        metrics.onPayloadCacheLookup( "a", false );
+        metrics.onHandlerQueued( VoucherHandlers.getWorkerNewHandler(), 2 );
+        metrics.onVoucherRegistered( "a" );
+
+        String scrape = metrics.scrape();
+        Assert.assertTrue( scrape, scrape.contains( "voucher_notify_fanout count=1 sum=3 max=3 p50=3 p99=3\n" ) );
+        Assert.assertTrue( scrape, scrape.contains( "voucher_worker_lane_wait_nanos{lane=\"default\"} count=0" ) );
+        Assert.assertTrue( scrape, scrape.contains( "voucher_timeouts_fired 1\n" ) );
+        Assert.assertTrue( scrape, scrape.contains( "voucher_payload_cache_hits 1\n" ) );
+        Assert.assertTrue( scrape, scrape.contains( "voucher_payload_cache_misses 2\n" ) );
+        String handler = VoucherHandlers.getWorkerNewHandler().getName();
+        Assert.assertTrue( scrape, scrape.contains( "voucher_handler_queue_depth{handler=\"" + handler + "\"} count=1 sum=2 max=2" ) );
+        Assert.assertTrue( scrape, scrape.contains( "voucher_handler_queue_depth_current{handler=\"" + handler + "\"} " ) );
+        Assert.assertTrue( scrape, scrape.endsWith( "voucher_outstanding{key=\"a\"} 1\n" ) );
+    }
+
+    @Test
+    public void scrapeEscapesLabelValues() {
+        InMemoryVoucherMetrics metrics = new InMemoryVoucherMetrics();
+        metrics.onVoucherRegistered( "say \"hi\"\\\nbye" );
+
+        String scrape = metrics.scrape();
+        Assert.assertTrue( scrape, scrape.endsWith( "voucher_outstanding{key=\"say \\\"hi\\\"\\\\\\nbye\"} 1\n" ) );
+        for ( String line : scrape.split( "\n" ) ) {
+            Assert.assertTrue( line, line.startsWith( "voucher_" ) );
+        }
+    }
+}
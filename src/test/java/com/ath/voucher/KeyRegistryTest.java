@@ -0,0 +1,98 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class KeyRegistryTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<Integer> manager() {
+        return VoucherManager.attain();
+    }
+
+    @Test
+    public void snapshotSkipsUnregisteredAndKeepsOrder() {
+        VoucherManager<Integer> vm = manager();
+        KeyRegistry<Integer> registry = new KeyRegistry<>();
+        List<Voucher<Integer>> vouchers = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ ) {
+            Voucher<Integer> voucher = new Voucher<>( vm, "k" );
+            Assert.assertTrue( registry.register( voucher ) );
+            Assert.assertFalse( registry.register( voucher ) ); // already registered
+            vouchers.add( voucher );
+        }
+        for ( int i = 0; i < 1000; i++ ) {
+            if ( i % 10 != 0 ) {
+                Assert.assertTrue( registry.unregister( vouchers.get( i ) ) );
+                Assert.assertFalse( registry.unregister( vouchers.get( i ) ) );
+            }
+        }
+        List<Voucher<Integer>> live = registry.snapshot();
+        Assert.assertEquals( 100, live.size() );
+        Assert.assertEquals( 100, registry.size() );
+        for ( int i = 0; i < live.size(); i++ ) {
+            Assert.assertSame( vouchers.get( i * 10 ), live.get( i ) );
+        }
+    }
+
+    @Test
+    public void retiresWhenEmptyAndRefusesRegistrationsAfter() {
+        VoucherManager<Integer> vm = manager();
+        KeyRegistry<Integer> registry = new KeyRegistry<>();
+        Voucher<Integer> voucher = new Voucher<>( vm, "k" );
+        Assert.assertTrue( registry.register( voucher ) );
+        Assert.assertTrue( registry.unregister( voucher ) );
+        Assert.assertTrue( registry.isRetired() );
+        Assert.assertFalse( registry.register( new Voucher<>( vm, "k" ) ) );
+    }
+
+    /**
+     * Registrations racing the key's last unregister must land in the registry the manager keeps, never a retired one.
+     */
+    @Test
+    public void registrationsRacingRetirementAreNeverLost() throws Exception {
+        final VoucherManager<Integer> vm = manager();
+        final int threads = 4;
+        final int rounds = 20000;
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ ) {
+            new Thread() {
+                @Override public void run() {
+                    try {
+                        for ( int i = 0; i < rounds && failure.get() == null; i++ ) {
+                            Voucher<Integer> voucher = vm.newVoucher( "contended" );
+                            if ( !voucher.isRegistered() || vm.voucherCount( "contended" ) < 1 ) {
+                                failure.set( "registered voucher missing from the manager in round " + i );
+                            }
+                            voucher.unregister();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        Assert.assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+        Assert.assertNull( failure.get() );
+        Assert.assertEquals( 0, vm.voucherCount( "contended" ) );
+
+        final AtomicInteger delivered = new AtomicInteger();
+        for ( int i = 0; i < 10; i++ ) {
+            vm.newVoucher( "contended" ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                    delivered.incrementAndGet();
+                }
+            } );
+        }
+        vm.notifyVouchers( "contended", new VoucherPayload<>( 1 ) );
+        Assert.assertEquals( 10, delivered.get() );
+    }
+}
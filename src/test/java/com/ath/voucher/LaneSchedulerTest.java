@@ -0,0 +1,220 @@
+package com.ath.voucher;
+
+import com.ath.voucher.VoucherWorker.Lane;
+import com.ath.voucher.VoucherWorker.Overflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class LaneSchedulerTest {
+
+    /**
+     * Holds what it is handed until the test runs it, so every pick is deterministic.
+     */
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> mHanded = new ArrayList<>();
+        boolean mRejecting;
+
+        @Override public void execute( Runnable command ) {
+            if ( mRejecting ) {
+                throw new RejectedExecutionException( "shut down" );
+            }
+            mHanded.add( command );
+        }
+
+        void runNext() {
+            mHanded.remove( 0 ).run();
+        }
+    }
+
+    private static final class Named implements Runnable, LaneScheduler.Rejectable {
+        private final String mName;
+        private final List<String> mLog;
+
+        Named( String name, List<String> log ) {
+            mName = name;
+            mLog = log;
+        }
+
+        @Override public void run() {
+            mLog.add( mName );
+        }
+
+        @Override public void onRejected( VoucherRejectedException e ) {
+            mLog.add( "rejected " + mName );
+        }
+    }
+
+    @Test
+    public void higherLaneGoesFirst() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.BACKGROUND, new Named( "b1", log ) ); // straight to the executor, nothing else queued
+        lanes.execute( Lane.BACKGROUND, new Named( "b2", log ) );
+        lanes.execute( Lane.DEFAULT, new Named( "d1", log ) );
+        lanes.execute( Lane.INTERACTIVE, new Named( "i1", log ) );
+        while ( !executor.mHanded.isEmpty() ) {
+            executor.runNext();
+        }
+        Assert.assertEquals( "[b1, i1, d1, b2]", log.toString() );
+    }
+
+    @Test
+    public void laneShareLeavesRoomForOthers() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 4 );
+        List<String> log = new ArrayList<>();
+        for ( int i = 0; i < 4; i++ ) {
+            lanes.execute( Lane.BACKGROUND, new Named( "b" + i, log ) );
+        }
+        Assert.assertEquals( 2, executor.mHanded.size() ); // half of the concurrency by default
+        Assert.assertEquals( 2, lanes.getQueued( Lane.BACKGROUND ) );
+        lanes.execute( Lane.INTERACTIVE, new Named( "i", log ) );
+        Assert.assertEquals( 3, executor.mHanded.size() );
+
+        lanes.setShare( Lane.BACKGROUND, 100 );
+        lanes.execute( Lane.DEFAULT, new Named( "d", log ) ); // any pump picks up the raised share
+        Assert.assertEquals( 4, executor.mHanded.size() );
+    }
+
+    @Test
+    public void agedWorkOvertakesHigherLanes() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        lanes.setAging( 20 );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.DEFAULT, new Named( "blocker", log ) );
+        lanes.execute( Lane.BACKGROUND, new Named( "old", log ) );
+        TimeUnit.MILLISECONDS.sleep( 40 );
+        lanes.execute( Lane.INTERACTIVE, new Named( "young", log ) );
+        while ( !executor.mHanded.isEmpty() ) {
+            executor.runNext();
+        }
+        Assert.assertEquals( "[blocker, old, young]", log.toString() );
+    }
+
+    @Test
+    public void failFastRejectsBeyondCapacity() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        lanes.setCapacity( 2, Overflow.FAIL_FAST );
+        List<String> log = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ ) {
+            lanes.execute( Lane.DEFAULT, new Named( "t" + i, log ) ); // one handed over, two queued
+        }
+        try {
+            lanes.execute( Lane.DEFAULT, new Named( "over", log ) );
+            Assert.fail( "expected a rejection" );
+        } catch ( VoucherRejectedException expected ) {
+            // overload, not a failure of the task
+        }
+        Assert.assertEquals( 2, lanes.getQueued() );
+    }
+
+    @Test
+    public void callerRunsOnTheProducer() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        lanes.setCapacity( 1, Overflow.CALLER_RUNS );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.DEFAULT, new Named( "running", log ) );
+        lanes.execute( Lane.DEFAULT, new Named( "queued", log ) );
+        lanes.execute( Lane.DEFAULT, new Named( "inline", log ) );
+        Assert.assertEquals( "[inline]", log.toString() );
+    }
+
+    @Test
+    public void dropOldestNeverDropsHigherLanes() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        lanes.setCapacity( 2, Overflow.DROP_OLDEST );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.DEFAULT, new Named( "running", log ) );
+        lanes.execute( Lane.BACKGROUND, new Named( "b", log ) );
+        lanes.execute( Lane.INTERACTIVE, new Named( "i1", log ) );
+        lanes.execute( Lane.INTERACTIVE, new Named( "i2", log ) ); // drops b
+        Assert.assertEquals( "[rejected b]", log.toString() );
+        try {
+            lanes.execute( Lane.BACKGROUND, new Named( "b2", log ) ); // only interactive work to drop
+            Assert.fail( "expected a rejection" );
+        } catch ( VoucherRejectedException expected ) {
+            // the newcomer is the lowest priority, it goes
+        }
+    }
+
+    @Test
+    public void executorRejectionWithNothingRunningFailsTheTask() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        executor.mRejecting = true;
+        LaneScheduler lanes = new LaneScheduler( executor, 1 );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.DEFAULT, new Named( "a", log ) );
+        lanes.execute( Lane.DEFAULT, new Named( "b", log ) );
+        Assert.assertEquals( "[rejected a, rejected b]", log.toString() );
+        Assert.assertEquals( 0, lanes.getQueued() );
+        Assert.assertEquals( 0, lanes.getRunning() );
+    }
+
+    @Test
+    public void executorRejectionWhileBusyRetriesOnCompletion() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        LaneScheduler lanes = new LaneScheduler( executor, 2 );
+        List<String> log = new ArrayList<>();
+        lanes.execute( Lane.DEFAULT, new Named( "a", log ) );
+        executor.mRejecting = true;
+        lanes.execute( Lane.DEFAULT, new Named( "b", log ) ); // put back, a is still running
+        Assert.assertEquals( 1, lanes.getQueued() );
+        executor.mRejecting = false;
+        executor.runNext();
+        executor.runNext();
+        Assert.assertEquals( "[a, b]", log.toString() );
+    }
+
+    /**
+     * Before lanes: core threads, then a 10 slot deque, then more threads up to the max, then rejection.
+     */
+    @Test
+    public void workerTakesAsMuchAsTheOldExecutorBeforeRejecting() throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        VoucherWorker worker = new VoucherWorker();
+        Assert.assertEquals( 10, worker.getQueueCapacity() );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch started = new CountDownLatch( maxThreads );
+        Runnable blocked = new Runnable() {
+            @Override public void run() {
+                started.countDown();
+                try {
+                    release.await( 10, TimeUnit.SECONDS );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            int accepted = 0;
+            while ( accepted < 1000 && worker.tryEnqueue( blocked ) ) {
+                accepted++;
+            }
+            Assert.assertEquals( maxThreads + 10, accepted );
+            Assert.assertTrue( started.await( 5, TimeUnit.SECONDS ) ); // all of them running at once, not just the core
+            Assert.assertEquals( maxThreads, worker.getRunning() );
+            Assert.assertEquals( 10, worker.getQueued() );
+            try {
+                worker.enqueue( blocked );
+                Assert.fail( "expected a rejection" );
+            } catch ( RejectedExecutionException expected ) {
+                // like the executor's own bounded queue used to
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NonReentrantLockPoolTest {
+
+    private static boolean tryLockElsewhere( final NonReentrantLockPool pool, final String key ) throws Exception {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            return other.submit( new Callable<Boolean>() {
+                @Override public Boolean call() {
+                    return pool.tryLock( key );
+                }
+            } ).get( 5, TimeUnit.SECONDS );
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sameKeyCallersShareOneLock() throws Exception {
+        NonReentrantLockPool pool = new NonReentrantLockPool();
+        Assert.assertTrue( pool.tryLock( "a" ) );
+        Assert.assertFalse( pool.tryLock( "a" ) ); // not even the owner's thread gets back in
+        Assert.assertFalse( tryLockElsewhere( pool, "a" ) );
+
+        pool.unlock( "a" );
+        Assert.assertTrue( tryLockElsewhere( pool, "a" ) );
+        Assert.assertFalse( pool.tryLock( "a" ) );
+        pool.unlock( "a" ); // the thread that locked it is gone, anyone may unlock
+        Assert.assertTrue( pool.tryLock( "a" ) );
+    }
+
+    @Test
+    public void differentKeysDontBlockEachOther() throws Exception {
+        NonReentrantLockPool pool = new NonReentrantLockPool();
+        Assert.assertTrue( pool.tryLock( "a" ) );
+        Assert.assertTrue( tryLockElsewhere( pool, "b" ) );
+        Assert.assertTrue( pool.tryLock( "c" ) );
+        Assert.assertEquals( 3, pool.size() );
+    }
+
+    @Test
+    public void onlyOneRacingCallerWins() throws InterruptedException {
+        final NonReentrantLockPool pool = new NonReentrantLockPool();
+        final int threads = 8;
+        final AtomicInteger winners = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ ) {
+            new Thread( new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        if ( pool.tryLock( "key" ) ) {
+                            winners.incrementAndGet();
+                        }
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            } ).start();
+        }
+        start.countDown();
+        Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals( 1, winners.get() );
+    }
+
+    @Test
+    public void releasedKeysDontStayInThePool() {
+        NonReentrantLockPool pool = new NonReentrantLockPool();
+        for ( int i = 0; i < 1000; i++ ) {
+            String key = "key" + i;
+            Assert.assertTrue( pool.tryLock( key ) );
+            pool.unlock( key );
+        }
+        Assert.assertEquals( 0, pool.size() );
+    }
+}
@@ -0,0 +1,118 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class NotifyAsyncTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<Integer> singleShard() {
+        return VoucherManager.attain( -1, 1 ); // every key on one shard, so nothing but the key separates them
+    }
+
+    @Test
+    public void slowSubscriberOnlyHoldsUpItsOwnKey() throws Exception {
+        VoucherManager<Integer> vm = singleShard();
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        vm.setDispatcher( pool );
+        try {
+            final CountDownLatch release = new CountDownLatch( 1 );
+            vm.newVoucher( "slow" ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                    try {
+                        release.await( 5, TimeUnit.SECONDS );
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } );
+            final CountDownLatch fast = new CountDownLatch( 1 );
+            vm.newVoucher( "fast" ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                    fast.countDown();
+                }
+            } );
+            vm.notifyVouchersAsync( "slow", new VoucherPayload<>( 1 ) );
+            vm.notifyVouchersAsync( "fast", new VoucherPayload<>( 2 ) );
+            Assert.assertTrue( fast.await( 2, TimeUnit.SECONDS ) );
+            release.countDown();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Each voucher is captured by its own notify and every later one still in flight, the first to arrive must be its own.
+     */
+    @Test
+    public void notifiesForOneKeyArriveInOrder() throws Exception {
+        VoucherManager<Integer> vm = singleShard();
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        vm.setDispatcher( pool );
+        try {
+            final int count = 500;
+            final int[] firstSeen = new int[count];
+            final CountDownLatch done = new CountDownLatch( count );
+            for ( int i = 0; i < count; i++ ) {
+                final int index = i;
+                vm.newVoucher( "ordered" ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                    @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                        firstSeen[index] = payload.getData();
+                        done.countDown();
+                    }
+                } );
+                vm.notifyVouchersAsync( "ordered", new VoucherPayload<>( i ), true ); // uncached, or the next voucher is handed this one
+            }
+            Assert.assertTrue( done.await( 2, TimeUnit.SECONDS ) );
+            for ( int i = 0; i < count; i++ ) {
+                Assert.assertEquals( i, firstSeen[i] );
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A dispatcher that refuses must neither lose the delivery nor wedge the key for later notifies.
+     */
+    @Test
+    public void refusingDispatcherDoesNotWedgeTheKey() throws Exception {
+        VoucherManager<Integer> vm = singleShard();
+        final AtomicBoolean refuse = new AtomicBoolean( true );
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        vm.setDispatcher( new Executor() {
+            @Override public void execute( Runnable command ) {
+                if ( refuse.get() ) {
+                    throw new RejectedExecutionException( "full" );
+                }
+                pool.execute( command );
+            }
+        } );
+        try {
+            Assert.assertEquals( Integer.valueOf( 0 ), vm.notifyVouchersAsync( "k", new VoucherPayload<>( 1 ) ).get( 1, TimeUnit.SECONDS ) );
+            final CountDownLatch delivered = new CountDownLatch( 1 );
+            vm.newVoucher( "k" ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                    if ( payload.getData() == 2 ) {
+                        delivered.countDown();
+                    } else {
+                        voucher.resubscribe();
+                    }
+                }
+            } );
+            refuse.set( false );
+            Assert.assertEquals( Integer.valueOf( 1 ), vm.notifyVouchersAsync( "k", new VoucherPayload<>( 2 ) ).get( 1, TimeUnit.SECONDS ) );
+            Assert.assertTrue( delivered.await( 1, TimeUnit.SECONDS ) );
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ath.voucher;
+
+import com.ath.voucher.threadhandlers.VoucherHandler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class NotifyBatchTest {
+
+    @Test
+    public void serialHandlerSeesEachKeyInOrderAcrossBatches() throws Exception {
+        @SuppressWarnings( "unchecked" )
+        VoucherManager<Integer> vm = VoucherManager.attain();
+        ExecutorService loop = Executors.newSingleThreadExecutor();
+        VoucherHandler handler = new VoucherHandler( loop );
+        try {
+            int keys = 100; // enough to span several chunks per batch
+            int rounds = 20;
+            final Map<String, List<Integer>> seen = new HashMap<>(); // only touched on the loop thread
+            final CountDownLatch done = new CountDownLatch( keys * rounds );
+            for ( int round = 0; round < rounds; round++ ) {
+                Map<String, VoucherPayload<Integer>> batch = new LinkedHashMap<>();
+                for ( int k = 0; k < keys; k++ ) {
+                    String key = "key" + k;
+                    vm.newVoucher( key ).setHandler( handler ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                        @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                            List<Integer> order = seen.get( voucher.getKey() );
+                            if ( order == null ) {
+                                order = new ArrayList<>();
+                                seen.put( voucher.getKey(), order );
+                            }
+                            order.add( payload.getData() );
+                            done.countDown();
+                        }
+                    } );
+                    batch.put( key, new VoucherPayload<>( round ) );
+                }
+                vm.notifyVouchersBatch( batch, true );
+            }
+            Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+            loop.submit( new Runnable() {
+                @Override public void run() {
+                }
+            } ).get(); // publishes seen
+            Assert.assertEquals( keys, seen.size() );
+            for ( List<Integer> order : seen.values() ) {
+                for ( int round = 0; round < rounds; round++ ) {
+                    Assert.assertEquals( Integer.valueOf( round ), order.get( round ) );
+                }
+            }
+        } finally {
+            loop.shutdownNow();
+        }
+    }
+
+    @Test
+    public void deliversInMapOrderAcrossShards() {
+        @SuppressWarnings( "unchecked" )
+        VoucherManager<Integer> vm = VoucherManager.attain( -1, 16 );
+        final List<String> seen = new ArrayList<>();
+        Map<String, VoucherPayload<Integer>> batch = new LinkedHashMap<>();
+        for ( int k = 50; k > 0; k-- ) { // enough keys that neighbours land on different shards
+            String key = "key" + k;
+            vm.newVoucher( key ).subscribe( new Voucher.VoucherResponse<Integer>() {
+                @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                    seen.add( voucher.getKey() );
+                }
+            } );
+            batch.put( key, new VoucherPayload<>( k ) );
+        }
+        vm.notifyVouchersBatch( batch, true );
+        Assert.assertEquals( new ArrayList<>( batch.keySet() ), seen );
+    }
+}
@@ -0,0 +1,72 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PayloadCacheTest {
+
+    @Test
+    public void withoutATimeoutPayloadsNeverExpire() throws Exception {
+        PayloadCache<String> cache = new PayloadCache<>();
+        cache.put( "k", new VoucherPayload<>( "v" ) );
+        Thread.sleep( 5 );
+        Assert.assertEquals( "v", cache.get( "k" ).getData() );
+        Assert.assertFalse( cache.get( "k" ).isStale() );
+        Assert.assertEquals( 0, cache.getExpirationCount() );
+    }
+
+    @Test
+    public void expiresAfterItsTimeoutAndServesStaleInTheWindow() throws Exception {
+        PayloadCache<String> cache = new PayloadCache<>();
+        cache.setDefaultTimeout( 20 );
+        cache.setStaleWindow( 200 );
+        cache.put( "k", new VoucherPayload<>( "v" ) );
+        Assert.assertFalse( cache.get( "k" ).isStale() );
+        Thread.sleep( 40 );
+        VoucherPayload<String> stale = cache.get( "k" );
+        Assert.assertTrue( stale.isStale() );
+        Assert.assertEquals( "v", stale.getData() );
+
+        cache.setTimeout( "short", 1 ); // per key beats the default
+        cache.setStaleWindow( 0 );
+        cache.put( "short", new VoucherPayload<>( "s" ) );
+        Thread.sleep( 10 );
+        Assert.assertNull( cache.get( "short" ) );
+        Assert.assertEquals( 1, cache.getExpirationCount() );
+    }
+
+    @Test
+    public void evictsWhatWasNotReadLately() {
+        PayloadCache<Integer> cache = new PayloadCache<>();
+        cache.setMaxEntries( 3 );
+        cache.put( "hot", new VoucherPayload<>( 0 ) );
+        cache.put( "a", new VoucherPayload<>( 1 ) );
+        cache.put( "b", new VoucherPayload<>( 2 ) );
+        for ( int i = 0; i < 10; i++ ) {
+            Assert.assertNotNull( cache.get( "hot" ) );
+            cache.put( "c" + i, new VoucherPayload<>( i ) );
+        }
+        Assert.assertEquals( 3, cache.size() );
+        Assert.assertNotNull( cache.get( "hot" ) );
+        Assert.assertNull( cache.get( "a" ) );
+        Assert.assertEquals( 10, cache.getEvictionCount() );
+    }
+
+    /**
+     * Per key timeouts for keys that come and go must not outgrow the bound.
+     */
+    @Test
+    public void perKeyTimeoutsAreBounded() throws Exception {
+        PayloadCache<Integer> cache = new PayloadCache<>();
+        cache.setMaxEntries( 2 );
+        for ( int i = 0; i < 100; i++ ) {
+            cache.setTimeout( "uuid" + i, 1 );
+        }
+        cache.setTimeout( "kept", 1 );
+        cache.put( "kept", new VoucherPayload<>( 1 ) );
+        cache.put( "uuid0", new VoucherPayload<>( 0 ) ); // its timeout was forgotten, falls back to never expiring
+        Thread.sleep( 10 );
+        Assert.assertNull( cache.get( "kept" ) );
+        Assert.assertNotNull( cache.get( "uuid0" ) );
+    }
+}
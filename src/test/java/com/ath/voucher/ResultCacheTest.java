@@ -0,0 +1,96 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResultCacheTest {
+    private static final long TTL = 50;
+
+    private final AtomicInteger mRuns = new AtomicInteger();
+    private final VoucherWorker.WorkerTask<Integer, Integer> mTask = new VoucherWorker.WorkerTask<Integer, Integer>() {
+        @Override public Integer doInBackground( Integer input ) throws Exception {
+            Thread.sleep( 20 );
+            return mRuns.incrementAndGet();
+        }
+    };
+
+    private static final class Collector implements Voucher.VoucherResponse<Integer> {
+        final List<VoucherPayload<Integer>> mPayloads = Collections.synchronizedList( new ArrayList<VoucherPayload<Integer>>() );
+        final CountDownLatch mLatch;
+
+        Collector( int expected ) {
+            mLatch = new CountDownLatch( expected );
+        }
+
+        @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+            mPayloads.add( payload );
+            mLatch.countDown();
+        }
+
+        Collector await() throws InterruptedException {
+            Assert.assertTrue( mLatch.await( 5, TimeUnit.SECONDS ) );
+            return this;
+        }
+    }
+
+    private Collector request( VoucherWorker worker, boolean refreshed, int expected ) {
+        Collector collector = new Collector( expected );
+        worker.enqueueVoucher( "k", 0, mTask, refreshed ).setHandlerAny().subscribe( collector );
+        return collector;
+    }
+
+    private VoucherWorker warmedUp() throws InterruptedException {
+        VoucherWorker worker = new VoucherWorker().setResultCache( TTL, 60000, 10 );
+        Assert.assertEquals( Integer.valueOf( 1 ), request( worker, true, 1 ).await().mPayloads.get( 0 ).getData() );
+        Thread.sleep( TTL * 2 ); // past the ttl, well inside the stale window
+        return worker;
+    }
+
+    @Test
+    public void refreshedRequestGetsStaleThenFresh() throws Exception {
+        VoucherWorker worker = warmedUp();
+        List<VoucherPayload<Integer>> payloads = request( worker, true, 2 ).await().mPayloads;
+        Assert.assertTrue( payloads.get( 0 ).isStale() );
+        Assert.assertEquals( Integer.valueOf( 1 ), payloads.get( 0 ).getData() );
+        Assert.assertFalse( payloads.get( 1 ).isStale() );
+        Assert.assertEquals( Integer.valueOf( 2 ), payloads.get( 1 ).getData() );
+    }
+
+    @Test
+    public void plainRequestGetsOnlyTheStaleResultButStillRefreshes() throws Exception {
+        VoucherWorker worker = warmedUp();
+        Collector stale = request( worker, false, 1 ).await();
+        Assert.assertTrue( stale.mPayloads.get( 0 ).isStale() );
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( mRuns.get() < 2 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep( 5 );
+        }
+        Thread.sleep( 20 ); // the refresh result lands in the cache right after the task returns
+        Assert.assertEquals( 1, stale.mPayloads.size() );
+        VoucherPayload<Integer> fresh = request( worker, false, 1 ).await().mPayloads.get( 0 );
+        Assert.assertFalse( fresh.isStale() );
+        Assert.assertEquals( Integer.valueOf( 2 ), fresh.getData() );
+    }
+
+    @Test
+    public void concurrentStaleRequestsShareOneRefresh() throws Exception {
+        VoucherWorker worker = warmedUp();
+        List<Collector> collectors = new ArrayList<>();
+        for ( int i = 0; i < 50; i++ ) {
+            collectors.add( request( worker, true, 2 ) );
+        }
+        for ( Collector collector : collectors ) {
+            List<VoucherPayload<Integer>> payloads = collector.await().mPayloads;
+            Assert.assertTrue( payloads.get( 0 ).isStale() );
+            Assert.assertEquals( Integer.valueOf( 2 ), payloads.get( 1 ).getData() );
+        }
+        Assert.assertEquals( 2, mRuns.get() );
+    }
+}
@@ -0,0 +1,27 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShardCountTest {
+
+    @Test
+    public void shardsRoundUpToAPowerOfTwo() {
+        Assert.assertEquals( 1, VoucherManager.attain( -1, 0 ).getShardCount() );
+        Assert.assertEquals( 1, VoucherManager.attain( -1, 1 ).getShardCount() );
+        Assert.assertEquals( 8, VoucherManager.attain( -1, 5 ).getShardCount() );
+        Assert.assertEquals( 16, VoucherManager.attain( -1, 16 ).getShardCount() );
+        Assert.assertEquals( VoucherManager.DEFAULT_SHARDS, VoucherManager.attain().getShardCount() );
+    }
+
+    @Test
+    public void shardsPastTheLargestPowerOfTwoAreRejected() {
+        for ( int shards : new int[] { VoucherManager.MAX_SHARDS + 1, Integer.MAX_VALUE } ) {
+            try {
+                VoucherManager.attain( -1, shards );
+                Assert.fail( "accepted " + shards );
+            } catch ( IllegalArgumentException expected ) {
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class VoucherKeyGeneratorTest {
+
+    @Test
+    public void sequentialKeysAreUniqueAndCountUp() {
+        VoucherKeyGenerator generator = new VoucherKeyGenerator.Sequential();
+        String first = generator.nextKey();
+        Assert.assertTrue( first, first.startsWith( "#" ) && first.endsWith( ":1" ) );
+        String prefix = first.substring( 0, first.length() - 1 );
+        Set<String> keys = new HashSet<>();
+        keys.add( first );
+        for ( int i = 2; i <= 1000; i++ ) {
+            String key = generator.nextKey();
+            Assert.assertEquals( prefix + Integer.toString( i, Character.MAX_RADIX ), key );
+            Assert.assertTrue( key, keys.add( key ) );
+        }
+    }
+
+    @Test
+    public void sequentialKeysAreUniqueAcrossThreads() throws InterruptedException {
+        final VoucherKeyGenerator generator = new VoucherKeyGenerator.Sequential();
+        final Set<String> keys = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+        final int threads = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( threads );
+        for ( int t = 0; t < threads; t++ ) {
+            new Thread( new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        for ( int i = 0; i < perThread; i++ ) {
+                            keys.add( generator.nextKey() );
+                        }
+                    } catch ( InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            } ).start();
+        }
+        start.countDown();
+        Assert.assertTrue( done.await( 30, TimeUnit.SECONDS ) );
+        Assert.assertEquals( threads * perThread, keys.size() );
+    }
+
+    @Test
+    public void generatedKeysDontCollideWithUserKeysOrOtherManagers() {
+        Assert.assertNotEquals( new VoucherKeyGenerator.Sequential().nextKey(), new VoucherKeyGenerator.Sequential().nextKey() );
+
+        @SuppressWarnings( "unchecked" )
+        VoucherManager<Integer> vm = VoucherManager.attain();
+        Voucher<Integer> mine = vm.newVoucher( "#1" );
+        Voucher<Integer> generated = vm.newVoucher();
+        Assert.assertNotEquals( mine.getKey(), generated.getKey() );
+    }
+}
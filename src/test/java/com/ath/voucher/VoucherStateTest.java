@@ -0,0 +1,118 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VoucherStateTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<String> manager() {
+        return VoucherManager.attain();
+    }
+
+    private static final class Counting implements Voucher.VoucherResponse<String> {
+        final AtomicInteger mCalls = new AtomicInteger();
+        volatile VoucherPayload<String> mLast;
+
+        @Override public void onResult( Voucher<String> voucher, VoucherPayload<String> payload ) {
+            mLast = payload;
+            mCalls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Notifies from several threads racing each voucher's own timeout, each voucher is fulfilled exactly once.
+     */
+    @Test
+    public void deliversExactlyOnceUnderRacingNotifiesAndTimeouts() throws Exception {
+        final VoucherManager<String> vm = manager();
+        final int keys = 50;
+        List<Counting> responses = new ArrayList<>();
+        for ( int i = 0; i < 5000; i++ ) {
+            Counting response = new Counting();
+            vm.newVoucher( "k" + ( i % keys ) ).setTimeout( 1L ).subscribe( response );
+            responses.add( response );
+        }
+        ExecutorService notifiers = Executors.newFixedThreadPool( 4 );
+        for ( int t = 0; t < 4; t++ ) {
+            notifiers.execute( new Runnable() {
+                @Override public void run() {
+                    for ( int i = 0; i < keys; i++ ) {
+                        vm.notifyVouchersClearCache( "k" + i, new VoucherPayload<>( "x" ) );
+                    }
+                }
+            } );
+        }
+        notifiers.shutdown();
+        Assert.assertTrue( notifiers.awaitTermination( 10, TimeUnit.SECONDS ) );
+        Thread.sleep( 200 ); // let the last timeouts fire
+        for ( Counting response : responses ) {
+            Assert.assertEquals( 1, response.mCalls.get() );
+        }
+        for ( int i = 0; i < keys; i++ ) {
+            Assert.assertEquals( 0, vm.voucherCount( "k" + i ) );
+        }
+    }
+
+    @Test
+    public void notifiedBeforeSubscribeIsHandedOverOnSubscribe() {
+        VoucherManager<String> vm = manager();
+        Voucher<String> voucher = vm.newVoucher( "early" );
+        vm.notifyVouchersClearCache( "early", new VoucherPayload<>( "hello" ) );
+        Assert.assertFalse( voucher.isRegistered() );
+        Counting response = new Counting();
+        voucher.subscribe( response );
+        Assert.assertEquals( 1, response.mCalls.get() );
+        Assert.assertEquals( "hello", response.mLast.getData() );
+    }
+
+    @Test
+    public void resubscribingFromTheCallbackKeepsReceiving() {
+        VoucherManager<String> vm = manager();
+        final AtomicInteger calls = new AtomicInteger();
+        vm.newVoucher( "re" ).subscribe( new Voucher.VoucherResponse<String>() {
+            @Override public void onResult( Voucher<String> voucher, VoucherPayload<String> payload ) {
+                calls.incrementAndGet();
+                voucher.resubscribe();
+            }
+        } );
+        for ( int i = 0; i < 5; i++ ) {
+            vm.notifyVouchers( "re", new VoucherPayload<>( "r" + i ) );
+        }
+        Assert.assertEquals( 5, calls.get() );
+        Assert.assertEquals( 1, vm.voucherCount( "re" ) );
+    }
+
+    @Test
+    public void disabledParksTheLastGoodPayloadUntilEnabled() {
+        VoucherManager<String> vm = manager();
+        Counting response = new Counting();
+        Voucher<String> voucher = vm.newVoucher( "dis" ).subscribe( response );
+        voucher.disable();
+        vm.notifyVouchers( "dis", new VoucherPayload<>( "a" ) );
+        vm.notifyVouchers( "dis", new VoucherPayload<>( "b" ) );
+        vm.notifyVouchers( "dis", new VoucherPayload<String>( new Exception( "c" ) ) );
+        Assert.assertEquals( 0, response.mCalls.get() );
+        voucher.enable();
+        Assert.assertEquals( 1, response.mCalls.get() );
+        Assert.assertEquals( "b", response.mLast.getData() );
+    }
+
+    @Test
+    public void unregisteredVoucherIgnoresLaterNotifies() {
+        VoucherManager<String> vm = manager();
+        Counting response = new Counting();
+        Voucher<String> voucher = vm.newVoucher( "gone" ).subscribe( response );
+        voucher.unregister();
+        vm.notifyVouchersClearCache( "gone", new VoucherPayload<>( "late" ) ); // no handler, it would have been delivered inline
+        Assert.assertEquals( 0, response.mCalls.get() );
+        Assert.assertFalse( voucher.isRegistered() );
+    }
+}
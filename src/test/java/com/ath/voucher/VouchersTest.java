@@ -0,0 +1,139 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class VouchersTest {
+
+    @SuppressWarnings( "unchecked" )
+    private static VoucherManager<Integer> manager() {
+        return VoucherManager.attain();
+    }
+
+    private static final class Holder<DATA> implements Voucher.VoucherResponse<DATA> {
+        volatile VoucherPayload<DATA> mPayload;
+        volatile int mCalls;
+
+        @Override public void onResult( Voucher<DATA> voucher, VoucherPayload<DATA> payload ) {
+            mPayload = payload;
+            mCalls++;
+        }
+    }
+
+    @Test
+    public void allOfKeepsOrderAndFailsFast() {
+        VoucherManager<Integer> vm = manager();
+        Holder<List<Integer>> all = new Holder<>();
+        Vouchers.allOf( vm.newVoucher( "a" ), vm.newVoucher( "b" ) ).subscribe( all );
+        vm.notifyVouchersClearCache( "b", new VoucherPayload<>( 2 ) );
+        Assert.assertNull( all.mPayload );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 1 ) );
+        Assert.assertEquals( Arrays.asList( 1, 2 ), all.mPayload.getData() );
+
+        Holder<List<Integer>> failed = new Holder<>();
+        Vouchers.allOf( vm.newVoucher( "c" ), vm.newVoucher( "d" ) ).subscribe( failed );
+        vm.notifyVouchersClearCache( "d", new VoucherPayload<Integer>( new IllegalStateException( "d" ) ) );
+        Assert.assertTrue( failed.mPayload.getError() instanceof IllegalStateException );
+        vm.notifyVouchersClearCache( "c", new VoucherPayload<>( 3 ) );
+        Assert.assertEquals( 1, failed.mCalls );
+    }
+
+    @Test
+    public void anyOfTakesFirstSuccessOrLastError() {
+        VoucherManager<Integer> vm = manager();
+        Holder<Integer> any = new Holder<>();
+        Vouchers.anyOf( vm.newVoucher( "a" ), vm.newVoucher( "b" ) ).subscribe( any );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<Integer>( new IllegalStateException( "a" ) ) );
+        Assert.assertNull( any.mPayload );
+        vm.notifyVouchersClearCache( "b", new VoucherPayload<>( 2 ) );
+        Assert.assertEquals( Integer.valueOf( 2 ), any.mPayload.getData() );
+
+        Holder<Integer> none = new Holder<>();
+        Vouchers.anyOf( vm.newVoucher( "c" ), vm.newVoucher( "d" ) ).subscribe( none );
+        vm.notifyVouchersClearCache( "c", new VoucherPayload<Integer>( new IllegalStateException( "c" ) ) );
+        vm.notifyVouchersClearCache( "d", new VoucherPayload<Integer>( new IllegalArgumentException( "d" ) ) );
+        Assert.assertTrue( none.mPayload.getError() instanceof IllegalArgumentException );
+    }
+
+    @Test
+    public void zipMapAndFlatMapChain() {
+        final VoucherManager<Integer> vm = manager();
+        Holder<String> out = new Holder<>();
+        Vouchers.zip( vm.newVoucher( "a" ), vm.newVoucher( "b" ), new Vouchers.BiFunction<Integer, Integer, Integer>() {
+            @Override public Integer apply( Integer a, Integer b ) {
+                return a + b;
+            }
+        } ).flatMap( new Vouchers.Function<Integer, Voucher<Integer>>() {
+            @Override public Voucher<Integer> apply( Integer input ) {
+                return vm.newVoucher( "next" + input );
+            }
+        } ).map( new Vouchers.Function<Integer, String>() {
+            @Override public String apply( Integer input ) {
+                return "got " + input;
+            }
+        } ).subscribe( out );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 1 ) );
+        vm.notifyVouchersClearCache( "b", new VoucherPayload<>( 2 ) );
+        Assert.assertNull( out.mPayload );
+        vm.notifyVouchersClearCache( "next3", new VoucherPayload<>( 7 ) );
+        Assert.assertEquals( "got 7", out.mPayload.getData() );
+    }
+
+    @Test
+    public void functionErrorsBecomeThePayload() {
+        VoucherManager<Integer> vm = manager();
+        Holder<Integer> out = new Holder<>();
+        vm.newVoucher( "a" ).map( new Vouchers.Function<Integer, Integer>() {
+            @Override public Integer apply( Integer input ) {
+                throw new IllegalStateException( "boom" );
+            }
+        } ).subscribe( out );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 1 ) );
+        Assert.assertEquals( "boom", out.mPayload.getError().getMessage() );
+    }
+
+    @Test
+    public void sourceKeepsItsOwnListenerAndHandler() {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> source = vm.newVoucher( "a" );
+        Holder<Integer> own = new Holder<>();
+        source.subscribe( own );
+        Holder<Integer> mapped = new Holder<>();
+        source.map( new Vouchers.Function<Integer, Integer>() {
+            @Override public Integer apply( Integer input ) {
+                return input * 10;
+            }
+        } ).subscribe( mapped );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 4 ) );
+        Assert.assertEquals( Integer.valueOf( 4 ), own.mPayload.getData() );
+        Assert.assertEquals( Integer.valueOf( 40 ), mapped.mPayload.getData() );
+    }
+
+    @Test
+    public void composingAfterTheFactSeesTheCachedPayload() {
+        VoucherManager<Integer> vm = manager();
+        vm.notifyVouchers( "a", new VoucherPayload<>( 5 ) );
+        Holder<List<Integer>> all = new Holder<>();
+        Vouchers.allOf( vm.newVoucher( "a" ) ).subscribe( all );
+        Assert.assertEquals( Arrays.asList( 5 ), all.mPayload.getData() );
+    }
+
+    @Test
+    public void stageSettlesWhenItsSourceIsUnregistered() {
+        VoucherManager<Integer> vm = manager();
+        Voucher<Integer> source = vm.newVoucher( "a" );
+        Holder<Integer> mapped = new Holder<>();
+        source.map( new Vouchers.Function<Integer, Integer>() {
+            @Override public Integer apply( Integer input ) {
+                return input;
+            }
+        } ).subscribe( mapped );
+        source.unregister();
+        Assert.assertTrue( mapped.mPayload.getError() instanceof VoucherCancelledException );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 1 ) );
+        Assert.assertEquals( 1, mapped.mCalls );
+    }
+}
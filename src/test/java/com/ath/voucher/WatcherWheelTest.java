@@ -0,0 +1,65 @@
+package com.ath.voucher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WatcherWheelTest {
+
+    private static Watcher watcher( long timeoutMillis, final AtomicInteger fired, final CountDownLatch latch ) {
+        return new Watcher( timeoutMillis ) {
+            @Override protected void onTimeExceeded() {
+                fired.incrementAndGet();
+                if ( latch != null ) {
+                    latch.countDown();
+                }
+            }
+        };
+    }
+
+    @Test
+    public void firesOnlyWatchersThatWereNotCancelled() throws Exception {
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch( 50 );
+        List<Watcher> cancelled = new ArrayList<>();
+        for ( int i = 0; i < 100; i++ ) {
+            Watcher w = watcher( 20 + i % 30, fired, i % 2 == 0 ? latch : null ).start();
+            if ( i % 2 == 1 ) {
+                cancelled.add( w );
+            }
+        }
+        for ( Watcher w : cancelled ) {
+            w.cancel();
+        }
+        Assert.assertTrue( latch.await( 2, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+        Assert.assertEquals( 50, fired.get() );
+        Assert.assertEquals( 0, WatcherWheel.get().getPendingCount() );
+    }
+
+    /**
+     * The ticker dies when idle, schedules and cancels racing its exit must neither be lost nor fire twice.
+     */
+    @Test
+    public void survivesTheTickerStoppingAndRestarting() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        int expected = 0;
+        for ( int round = 0; round < 40; round++ ) {
+            CountDownLatch latch = new CountDownLatch( 1 );
+            Watcher kept = watcher( 1, fired, latch ).start();
+            watcher( 1, fired, null ).start().cancel();
+            Assert.assertTrue( "round " + round, latch.await( 2, TimeUnit.SECONDS ) );
+            Assert.assertFalse( kept.isEnabled() );
+            expected++;
+            Thread.sleep( round % 3 == 0 ? 0 : WatcherWheel.get().getTickMillis() * 2 ); // sometimes catch the ticker on its way out
+        }
+        Thread.sleep( 100 );
+        Assert.assertEquals( expected, fired.get() );
+        Assert.assertEquals( 0, WatcherWheel.get().getPendingCount() );
+    }
+}
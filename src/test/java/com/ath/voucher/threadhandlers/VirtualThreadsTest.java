@@ -0,0 +1,58 @@
+package com.ath.voucher.threadhandlers;
+
+import com.ath.voucher.Voucher;
+import com.ath.voucher.VoucherManager;
+import com.ath.voucher.VoucherPayload;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void fallbackIsUsedOnlyWhenVirtualThreadsAreMissing() {
+        Executor fallback = new Executor() {
+            @Override public void execute( Runnable command ) {
+                command.run();
+            }
+        };
+        Executor resolved = VirtualThreads.executorOr( fallback );
+        Assert.assertNotNull( resolved );
+        Assert.assertEquals( !VirtualThreads.isSupported(), resolved == fallback );
+        Assert.assertEquals( VirtualThreads.isSupported(), VoucherHandlers.isVirtualThreadsSupported() );
+    }
+
+    @Test
+    public void virtualHandlerDeliversOffTheCallerThread() throws InterruptedException {
+        VoucherHandler handler = VoucherHandlers.getWorkerVirtualHandler();
+        Assert.assertNotNull( handler );
+        Assert.assertEquals( "worker-virtual", handler.getName() );
+
+        @SuppressWarnings( "unchecked" )
+        VoucherManager<Integer> vm = VoucherManager.attain();
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        final AtomicReference<Integer> got = new AtomicReference<>();
+        final CountDownLatch delivered = new CountDownLatch( 1 );
+        vm.newVoucher( "a" ).setHandler( handler ).subscribe( new Voucher.VoucherResponse<Integer>() {
+            @Override public void onResult( Voucher<Integer> voucher, VoucherPayload<Integer> payload ) {
+                ranOn.set( Thread.currentThread() );
+                got.set( payload.getData() );
+                delivered.countDown();
+            }
+        } );
+        vm.notifyVouchersClearCache( "a", new VoucherPayload<>( 1 ) );
+
+        Assert.assertTrue( delivered.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertEquals( Integer.valueOf( 1 ), got.get() );
+        Assert.assertNotSame( Thread.currentThread(), ranOn.get() );
+        if ( !VoucherHandlers.isVirtualThreadsSupported() ) {
+            // falls back to the shared worker pool rather than a thread of its own
+            Assert.assertTrue( ranOn.get().getName(), ranOn.get().getName().startsWith( "VoucherWorker-" ) );
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ath.voucher.threadhandlers;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WorkerPoolTest {
+
+    private static Runnable blockUntil( final CountDownLatch release, final Set<String> threads, final CountDownLatch done ) {
+        return new Runnable() {
+            @Override public void run() {
+                threads.add( Thread.currentThread().getName() );
+                try {
+                    release.await( 5, TimeUnit.SECONDS );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void overflowUsesOneThreadNotOnePerDelivery() throws Exception {
+        WorkerPool pool = new WorkerPool();
+        pool.configure( 2, 4 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        Set<String> threads = Collections.synchronizedSet( new HashSet<String>() );
+        CountDownLatch done = new CountDownLatch( 10 );
+        for ( int i = 0; i < 10; i++ ) { // 2 running + 4 queued + 4 overflowing
+            pool.execute( blockUntil( release, threads, done ) );
+        }
+        Assert.assertEquals( 4, pool.getOverflowCount() );
+        release.countDown();
+        Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertFalse( threads.contains( Thread.currentThread().getName() ) );
+        Assert.assertEquals( threads.toString(), 3, threads.size() ); // 2 pool threads + the single overflow thread
+    }
+
+    @Test
+    public void producerWaitsForRoomWhenOverflowIsFullToo() throws Exception {
+        final WorkerPool pool = new WorkerPool();
+        pool.configure( 1, 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Set<String> threads = Collections.synchronizedSet( new HashSet<String>() );
+        final CountDownLatch done = new CountDownLatch( 4 );
+        pool.execute( blockUntil( release, threads, done ) ); // running
+        pool.execute( blockUntil( release, threads, done ) ); // queued
+        pool.execute( blockUntil( release, threads, done ) ); // overflow thread, running
+        Thread.sleep( 50 );
+        pool.execute( blockUntil( release, threads, done ) ); // overflow queue
+        Assert.assertEquals( 2, pool.getQueueDepth() ); // one in each queue
+
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        final CountDownLatch ran = new CountDownLatch( 1 );
+        Thread producer = new Thread() {
+            @Override public void run() {
+                pool.execute( new Runnable() {
+                    @Override public void run() {
+                        ranOn.set( Thread.currentThread() );
+                        ran.countDown();
+                    }
+                } );
+            }
+        };
+        producer.start();
+        producer.join( 100 );
+        Assert.assertTrue( producer.isAlive() ); // blocked, not running it inline
+        Assert.assertEquals( 1, ran.getCount() );
+        release.countDown();
+        producer.join( 5000 );
+        Assert.assertFalse( producer.isAlive() );
+        Assert.assertTrue( ran.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertNotSame( producer, ranOn.get() );
+        Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void poolThreadIsRejectedRatherThanWaitingOnItsOwnPool() throws Exception {
+        final WorkerPool pool = new WorkerPool();
+        pool.configure( 1, 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final Set<String> threads = Collections.synchronizedSet( new HashSet<String>() );
+        final CountDownLatch done = new CountDownLatch( 3 );
+        final AtomicReference<Exception> thrown = new AtomicReference<>();
+        final CountDownLatch posted = new CountDownLatch( 1 );
+        pool.execute( new Runnable() {
+            @Override public void run() {
+                try {
+                    pool.execute( blockUntil( release, threads, done ) ); // queued
+                    pool.execute( blockUntil( release, threads, done ) ); // overflow thread
+                    Thread.sleep( 50 );
+                    pool.execute( blockUntil( release, threads, done ) ); // overflow queue
+                    pool.execute( blockUntil( release, threads, done ) ); // no room anywhere
+                } catch ( Exception e ) {
+                    thrown.set( e );
+                }
+                posted.countDown();
+            }
+        } );
+        Assert.assertTrue( posted.await( 5, TimeUnit.SECONDS ) );
+        Assert.assertTrue( thrown.get() instanceof RejectedExecutionException );
+        release.countDown();
+        Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void postsRacingConfigureAreNotLost() throws Exception {
+        final WorkerPool pool = new WorkerPool();
+        pool.configure( 2, 1000 );
+        final int posts = 20000;
+        final CountDownLatch done = new CountDownLatch( posts );
+        final Runnable count = new Runnable() {
+            @Override public void run() {
+                done.countDown();
+            }
+        };
+        Thread producer = new Thread() {
+            @Override public void run() {
+                for ( int i = 0; i < posts; i++ ) {
+                    pool.execute( count );
+                }
+            }
+        };
+        producer.start();
+        for ( int i = 0; i < 50; i++ ) {
+            pool.configure( 2, 1000 );
+        }
+        producer.join();
+        Assert.assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+    }
+}